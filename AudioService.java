@@ -0,0 +1,158 @@
+import java.util.concurrent.CompletableFuture;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.Soundbank;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.LineUnavailableException;
+
+// The AudioService class owns the one synthesizer shared by the main menu and the
+// game. Opening the synth and loading its soundbank is slow, so warmUp() starts it on
+// a background thread as soon as the program starts, and callers pick it up through
+// ready() once it is done. With -Dmusicgame.synth=soft the game's notes play on the
+// built-in SoftSynth instead, for lower latency; the MIDI synth still plays the menu song.
+// The two are opened separately, so the game's notes still play on the SoftSynth when
+// there is no MIDI synth, only the menu song is silent then.
+public final class AudioService {
+    private static final CompletableFuture<AudioService> READY = new CompletableFuture<>();
+    private static boolean started = false;
+
+    private final Synthesizer synth;
+    private final SoftSynth softSynth;
+    private final NoteScheduler notes;
+    private final long openNanos;
+    private final long soundbankNanos;
+
+    private AudioService(Synthesizer synth, SoftSynth softSynth, NoteScheduler notes, long openNanos,
+            long soundbankNanos) {
+        this.synth = synth;
+        this.softSynth = softSynth;
+        this.notes = notes;
+        this.openNanos = openNanos;
+        this.soundbankNanos = soundbankNanos;
+    }
+
+    // Start opening the synthesizer in the background, does nothing after the first call
+    public static synchronized void warmUp() {
+        if (started) {
+            return;
+        }
+        started = true;
+        Thread thread = new Thread(AudioService::initialize, "AudioService");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Completes with the service once it is warm, or with null if there is no sound device
+    public static CompletableFuture<AudioService> ready() {
+        warmUp();
+        return READY;
+    }
+
+    private static void initialize() {
+        try {
+            SoftSynth softSynth = openSoftSynth();
+
+            long start = System.nanoTime();
+            Synthesizer synth = openSynthesizer();
+            long opened = System.nanoTime();
+
+            // Load the instruments now rather than on the first note
+            if (synth != null) {
+                Soundbank soundbank = synth.getDefaultSoundbank();
+                if (soundbank != null) {
+                    synth.loadAllInstruments(soundbank);
+                }
+            }
+            long loaded = System.nanoTime();
+
+            if (synth == null && softSynth == null) {
+                READY.complete(null);
+                return;
+            }
+            NoteScheduler notes = softSynth != null ? new NoteScheduler(softSynth) : new NoteScheduler(synth);
+            notes.start();
+
+            AudioService service = new AudioService(synth, softSynth, notes, opened - start, loaded - opened);
+            if (synth != null) {
+                System.out.printf("Audio ready in %.1f ms (open %.1f ms, soundbank %.1f ms)%n",
+                        service.getInitNanos() / 1e6, (opened - start) / 1e6, (loaded - opened) / 1e6);
+            }
+            if (softSynth != null) {
+                System.out.printf("Notes play on the software synth, %.1f ms output latency%n",
+                        softSynth.getOutputLatencyNanos() / 1e6);
+            }
+            READY.complete(service);
+        } catch (MidiUnavailableException | RuntimeException e) {
+            e.printStackTrace();
+            READY.complete(null);
+        }
+    }
+
+    // The default MIDI synth, opened, or null if there is none
+    private static Synthesizer openSynthesizer() {
+        try {
+            Synthesizer synth = MidiSystem.getSynthesizer();
+            synth.open();
+            return synth;
+        } catch (MidiUnavailableException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // The software synth when -Dmusicgame.synth=soft and there is a sound device, null otherwise.
+    // Its line buffer is -Dmusicgame.synthBufferFrames frames long.
+    private static SoftSynth openSoftSynth() {
+        if (!"soft".equals(System.getProperty("musicgame.synth"))) {
+            return null;
+        }
+        try {
+            SoftSynth softSynth = SoftSynth.open(
+                    Integer.getInteger("musicgame.synthBufferFrames", SoftSynth.DEFAULT_BUFFER_FRAMES));
+            softSynth.start();
+            return softSynth;
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Create a sequencer that plays through the shared synthesizer
+    public Sequencer createSequencer() throws MidiUnavailableException {
+        if (synth == null) {
+            throw new MidiUnavailableException("No MIDI synthesizer");
+        }
+        Sequencer sequencer = MidiSystem.getSequencer(false);
+        sequencer.open();
+        sequencer.getTransmitter().setReceiver(synth.getReceiver());
+        return sequencer;
+    }
+
+    // The MIDI synth, or null if only the software synth could be opened
+    public Synthesizer getSynthesizer() {
+        return synth;
+    }
+
+    // Software synth playing the game's notes, or null if they go to the MIDI synth
+    public SoftSynth getSoftSynth() {
+        return softSynth;
+    }
+
+    public NoteScheduler getNoteScheduler() {
+        return notes;
+    }
+
+    // Time taken to open the MIDI synth and load its soundbank
+    public long getInitNanos() {
+        return openNanos + soundbankNanos;
+    }
+
+    public long getOpenNanos() {
+        return openNanos;
+    }
+
+    public long getSoundbankNanos() {
+        return soundbankNanos;
+    }
+}
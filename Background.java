@@ -2,22 +2,23 @@ import javax.swing.*;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.util.ArrayList;
-import java.util.Random;
 
 public class Background extends JComponent {
     // Constants for the width and height of the game area
     private static final int WIDTH = 800;
     private static final int HEIGHT = 600;
     
-    // The player object
-    private Player player;
-    // List of all paddles in the game
-    public static ArrayList<Paddle> paddleList;
+    // The simulation being drawn
+    private final World world;
     // Label to display the player's score
     private JLabel scores;
 
-    // Timer for game updates
-    private Timer timer;
+    // Lock guarding the game state shared by the game loop and the EDT
+    private final Object stateLock = new Object();
+    // Interpolation factor between the last two simulation steps
+    private volatile double alpha = 1.0;
+    // Frames painted by Swing
+    private final FpsCounter fps = new FpsCounter();
     // Flag to indicate if the game is over
     private boolean gameOver;
 
@@ -26,116 +27,121 @@ public class Background extends JComponent {
     private int green = 245; //Default RGB for beige color
     private int blue = 220;
 
-    // List of power-ups
-     private ArrayList<PowerUp> powerUps = new ArrayList<>();
+    // Background color, only rebuilt when the color actually changes
+    private volatile Color backgroundColor = new Color(red, green, blue);
+
+    // Frame-time and tick-cost overlay, drawn on top of the game when switched on
+    private PerfMonitor perf;
+
+    // Sparks drawn over the entities
+    private Particles particles;
 
     // Constructor
-    public Background(JLabel scores) {
+    public Background(JLabel scores, World world) {
         this.scores = scores;
-    
-        // Initialize player and paddles
-        player = new Player(WIDTH / 2 - Player.SIZE / 2, 0, 0, 1);
-        paddleList = new ArrayList<>();
-        initializePaddles();
-
-        // Start the game update timer
-        timer = new Timer(10, e -> tick());
-        timer.start();
+        this.world = world;
     }
 
     // Returns the list of paddles
     public ArrayList<Paddle> getPaddleList() {
-        return paddleList;
-    }
-
-    // Initialize paddles at random positions
-    public void initializePaddles() {
-        Random random = new Random();
-        int numPaddles = 15; 
-        int spacing = HEIGHT / (numPaddles + 1); // calculate the spacing between the paddles
-     
-        for (int i = 0; i < numPaddles; i++) {
-            int y = spacing * (i + 1) - Paddle.HEIGHT / 2; // calculate the y-coordinate of the paddle
-            int x = random.nextInt(WIDTH - Paddle.WIDTH); // generate a random x-coordinate
-            Paddle paddle = new Paddle(x, y);
-            paddleList.add(paddle);
-        }
+        return world.getPaddleList();
     }
 
-    // Game logic
-    void tick() {
-        player.move();
-        for (Paddle p : paddleList) {
-            p.moveDown(HEIGHT, WIDTH); // move the paddle downwards
-            if (player.isCollidingWithPaddle(p)) {
-                player.bounce(); // make the player bounce if it lands on a paddle
-                player.increaseScore(); // increase the player's score
-            }
-        }
-        
-        repaint();
+    // Returns the simulation being drawn
+    public World getWorld() {
+        return world;
+    }
 
-        scores.setText("Score " + player.getScore());
+    // Called by the game loop before repainting
+    public void setInterpolation(double alpha) {
+        this.alpha = alpha;
     }
 
+    // Lock to hold while reading or changing the game state
+    public Object getStateLock() {
+        return stateLock;
+    }
+
+    // Swing rendering path, used when active rendering is not available
     @Override
     public void paintComponent(Graphics g) {
-        g.setColor(new Color(red,green,blue)); // Light Beige
-        g.fillRect(0, 0, WIDTH, HEIGHT);
-    
         super.paintComponent(g);
-        player.draw(g);
+        drawScene(g, alpha);
+        fps.frame();
+    }
+
+    // Frames per second painted by Swing
+    public double getFps() {
+        return fps.getFps();
+    }
+
+    // Draw the whole game, shared by the Swing and the active rendering paths
+    public void drawScene(Graphics g, double alpha) {
+        g.setColor(backgroundColor);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
 
-        for (Paddle p : paddleList) {
-            p.draw(g);
+        synchronized (stateLock) {
+            Player player = world.getPlayer();
+            player.draw(g, alpha);
+
+            for (Paddle p : world.getPaddleList()) {
+                p.draw(g, alpha);
+            }
+            for (PowerUp powerUp : world.getPowerUps()) {
+                powerUp.draw(g, alpha);
+            }
+            if (particles != null) {
+                particles.draw(g, alpha);
+            }
         }
-        for (PowerUp powerUp : powerUps) {
-            powerUp.draw(g);
+
+        if (perf != null) {
+            perf.draw(g);
+        }
+    }
+
+    // Set the monitor whose overlay is drawn on top of the game
+    public void setPerfMonitor(PerfMonitor perf) {
+        this.perf = perf;
+    }
+
+    // Set the particles drawn on top of the entities
+    public void setParticles(Particles particles) {
+        this.particles = particles;
+    }
+
+    // Show or hide the overlay
+    public void togglePerfOverlay() {
+        if (perf != null) {
+            perf.toggle();
         }
     }
 
     // Reset game state
     public void reset() {
-        // Reset player
-        player = new Player(WIDTH / 2 - Player.SIZE / 2, 0, 0, 1);
-        
-        // Reset paddles
-        paddleList.clear();
-        initializePaddles(); // Reinitialize paddles
-        
-        // Reset power-ups
-        resetPowerUps(); // Clear power-ups
-        
-        // Reset color
-        resetColor();
-        
+        synchronized (stateLock) {
+            // Reset player, paddles and power-ups, the level change resets the color
+            world.reset();
+            if (particles != null) {
+                particles.clear();
+            }
+
+            // Reset game over flag
+            gameOver = false;
+        }
+
         // Reset score
         scores.setText("Score 0");
-        
-        // Reset game over flag
-        gameOver = false;
-        
-        // Repaint the JFrame
-        repaint(); 
 
-        Paddle.firstPaddle(player);
+        // Repaint the JFrame
+        repaint();
     }
 
     // Get the player object
     public Player getPlayer() {
-        return player;
-    }
-
-    // Pause game
-    public void pauseGame() {
-        timer.stop();
+        return world.getPlayer();
     }
 
-    // Resume game
-    public void resumeGame() {
-        timer.start();
-    }
-    
     // Check if the game is over
     public boolean isGameOver() {
         return gameOver;
@@ -147,13 +153,9 @@ public class Background extends JComponent {
     }
 
     public ArrayList<PowerUp> getPowerUps() {
-        return this.powerUps;
+        return world.getPowerUps();
     }
 
-    public void setPowerUps(ArrayList<PowerUp> powerUps) {
-        this.powerUps = powerUps;
-    }
-    
     public static int getFrameWidth(){
         return WIDTH;
     }
@@ -164,27 +166,31 @@ public class Background extends JComponent {
 
     // In the Background class
     public Paddle getPaddleCollidingWithPlayer(Player player) {
-    for (Paddle paddle : getPaddleList()) {
-        if (player.isCollidingWithPaddle(paddle)) {
-            return paddle;
-        }
+        return world.getPaddleCollidingWithPlayer();
     }
-    return null;
+
+    // Change the background color to match the difficulty level
+    public void showLevel(Difficulty.Level level) {
+        setColors(level.getRed(), level.getGreen(), level.getBlue());
     }
 
     public void setColors(int r, int g, int b){
+        if (r == red && g == green && b == blue) {
+            return;
+        }
         red = r;
         green = g;
         blue = b;
+        backgroundColor = new Color(r, g, b);
     }
 
     public void resetColor(){
-        red = 245;
-        green = 245; //Default RGB for beige color
-        blue = 220;
+        setColors(245, 245, 220); //Default RGB for beige color
     }
     public void resetPowerUps() {
-        powerUps.clear();
+        synchronized (stateLock) {
+            world.clearPowerUps();
+        }
         repaint();
     }   
 }
\ No newline at end of file
@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// The BatchEvaluator class tunes the difficulty curve without human playtesting. It
+// sweeps paddle widths, points per level and power-up cadence, plays thousands of
+// headless sessions for every combination on a fork-join pool, and reports the score
+// and survival time distributions. Every combination is played with the same seeds,
+// so differences between rows come from the difficulty and not from luck, and the
+// results do not depend on the number of threads. Sessions follow the same song as the
+// windowed game (-Dmusicgame.chart), so the curve is tuned for the game that is played.
+// Usage: java -Djava.awt.headless=true BatchEvaluator [sessions] [maxTicks] [bot|random|idle] [threads] [csv file]
+public class BatchEvaluator {
+    // Defaults for the command line
+    private static final int DEFAULT_SESSIONS = 1000;
+    private static final int DEFAULT_MAX_TICKS = GameLoop.DEFAULT_TICK_RATE * 120;
+
+    // Values swept by default
+    private static final int[] FIRST_WIDTHS = {80, 70, 60};
+    private static final int[] WIDTH_STEPS = {5, 10};
+    private static final int[] POINTS_PER_LEVEL = {75, 100, 150};
+    private static final int[] POWER_UP_CADENCES = {50, 75, 100};
+    private static final int LEVELS = 6;
+    private static final int MIN_WIDTH = 20;
+
+    // Sessions played by one fork-join task without splitting further
+    private static final int SESSIONS_PER_TASK = 16;
+    private static final long SEED_BASE = 0x5EED5EEDL;
+
+    // Creates the input for one session, so stateful scripts get a fresh copy each time
+    public interface InputFactory {
+        World.Input create(long seed);
+    }
+
+    public static final InputFactory BOT = seed -> HeadlessGame.BOT;
+    public static final InputFactory IDLE = seed -> world -> 0;
+    public static final InputFactory RANDOM = RandomWalk::new;
+
+    // A script that holds a random direction for a random number of ticks
+    private static final class RandomWalk implements World.Input {
+        private final GameRandom random;
+        private int direction;
+        private int ticksLeft;
+
+        RandomWalk(long seed) {
+            random = new GameRandom(seed);
+        }
+
+        @Override
+        public int direction(World world) {
+            if (ticksLeft-- <= 0) {
+                direction = random.nextInt(3) - 1;
+                ticksLeft = 10 + random.nextInt(60);
+            }
+            return direction;
+        }
+    }
+
+    // The sessions played with one difficulty
+    public static final class Result {
+        private final Difficulty difficulty;
+        private final int tickRate;
+        private final int maxTicks;
+        private final int[] scores;
+        private final long[] ticks;
+
+        Result(Difficulty difficulty, int sessions, int tickRate, int maxTicks) {
+            this.difficulty = difficulty;
+            this.tickRate = tickRate;
+            this.maxTicks = maxTicks;
+            this.scores = new int[sessions];
+            this.ticks = new long[sessions];
+        }
+
+        public Difficulty getDifficulty() {
+            return difficulty;
+        }
+
+        public double meanScore() {
+            return Arrays.stream(scores).average().orElse(0);
+        }
+
+        public int scorePercentile(double percentile) {
+            int[] sorted = scores.clone();
+            Arrays.sort(sorted);
+            return sorted[indexOf(percentile, sorted.length)];
+        }
+
+        public double meanSurvivalSeconds() {
+            return Arrays.stream(ticks).average().orElse(0) / tickRate;
+        }
+
+        public double survivalPercentileSeconds(double percentile) {
+            long[] sorted = ticks.clone();
+            Arrays.sort(sorted);
+            return (double) sorted[indexOf(percentile, sorted.length)] / tickRate;
+        }
+
+        // Share of sessions that were still alive when time ran out
+        public double survivedShare() {
+            return (double) Arrays.stream(ticks).filter(t -> t >= maxTicks).count() / ticks.length;
+        }
+
+        private static int indexOf(double percentile, int length) {
+            return Math.min(length - 1, Math.max(0, (int) Math.ceil(length * percentile / 100.0) - 1));
+        }
+    }
+
+    // Every combination of the default sweep
+    public static Difficulty[] defaultSweep() {
+        Difficulty[] sweep = new Difficulty[FIRST_WIDTHS.length * WIDTH_STEPS.length
+                * POINTS_PER_LEVEL.length * POWER_UP_CADENCES.length];
+        int i = 0;
+        for (int firstWidth : FIRST_WIDTHS) {
+            for (int widthStep : WIDTH_STEPS) {
+                for (int points : POINTS_PER_LEVEL) {
+                    for (int cadence : POWER_UP_CADENCES) {
+                        sweep[i++] = Difficulty.stepped(firstWidth, widthStep, LEVELS, MIN_WIDTH, points, cadence);
+                    }
+                }
+            }
+        }
+        return sweep;
+    }
+
+    // Play the given number of sessions for every difficulty on the pool, following the
+    // chart if it is not null
+    public static Result[] evaluate(Difficulty[] difficulties, int sessions, int maxTicks, int tickRate,
+            Chart chart, InputFactory input, ForkJoinPool pool) {
+        Result[] results = new Result[difficulties.length];
+        for (int i = 0; i < difficulties.length; i++) {
+            results[i] = new Result(difficulties[i], sessions, tickRate, maxTicks);
+        }
+        pool.invoke(new Sessions(results, sessions, maxTicks, tickRate, chart, input, 0, difficulties.length * sessions));
+        return results;
+    }
+
+    // Plays a range of sessions, splitting it in half until it is small
+    private static final class Sessions extends RecursiveAction {
+        private final Result[] results;
+        private final int sessions;
+        private final int maxTicks;
+        private final int tickRate;
+        private final Chart chart;
+        private final InputFactory input;
+        private final int from;
+        private final int to;
+
+        Sessions(Result[] results, int sessions, int maxTicks, int tickRate, Chart chart, InputFactory input,
+                int from, int to) {
+            this.results = results;
+            this.sessions = sessions;
+            this.maxTicks = maxTicks;
+            this.tickRate = tickRate;
+            this.chart = chart;
+            this.input = input;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SESSIONS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Sessions(results, sessions, maxTicks, tickRate, chart, input, from, middle),
+                        new Sessions(results, sessions, maxTicks, tickRate, chart, input, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                Result result = results[i / sessions];
+                int session = i % sessions;
+                long seed = GameRandom.nextSeed(SEED_BASE + session);
+                World world = new World(tickRate, seed, result.difficulty);
+                if (chart != null) {
+                    world.setChart(chart);
+                }
+                world.advance(maxTicks, input.create(seed));
+                result.scores[session] = world.getScore();
+                result.ticks[session] = world.getTick();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        int maxTicks = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_TICKS;
+        String inputName = args.length > 2 ? args[2] : "bot";
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        String csv = args.length > 4 ? args[4] : null;
+
+        InputFactory input;
+        switch (inputName) {
+            case "bot":
+                input = BOT;
+                break;
+            case "random":
+                input = RANDOM;
+                break;
+            case "idle":
+                input = IDLE;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown input " + inputName + ", use bot, random or idle");
+        }
+
+        Difficulty[] sweep = defaultSweep();
+        int tickRate = GameLoop.DEFAULT_TICK_RATE;
+        Chart chart = ChartLoader.loadConfigured();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        Result[] results = evaluate(sweep, sessions, maxTicks, tickRate, chart, input, pool);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("%d difficulties x %d sessions (%s input, chart %s) on %d threads in %.2f s (%.0f sessions/s)%n",
+                sweep.length, sessions, inputName, chart != null ? chart.getName() : "none", threads, seconds,
+                sweep.length * sessions / seconds);
+        System.out.println("score mean/p50/p90/max | survival s mean/p50/p90 | survived | difficulty");
+        for (Result result : results) {
+            System.out.printf("%6.1f %4d %4d %4d | %6.1f %6.1f %6.1f | %5.1f%% | %s%n",
+                    result.meanScore(), result.scorePercentile(50), result.scorePercentile(90),
+                    result.scorePercentile(100), result.meanSurvivalSeconds(),
+                    result.survivalPercentileSeconds(50), result.survivalPercentileSeconds(90),
+                    result.survivedShare() * 100, result.difficulty);
+        }
+
+        if (csv != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(csv)))) {
+                out.println("widths,level_scores,power_up_cadences,score_mean,score_p50,score_p90,score_max,"
+                        + "survival_mean_s,survival_p50_s,survival_p90_s,survived_share");
+                for (Result result : results) {
+                    Difficulty difficulty = result.difficulty;
+                    StringBuilder widths = new StringBuilder();
+                    StringBuilder scores = new StringBuilder();
+                    StringBuilder cadences = new StringBuilder();
+                    for (int level = 0; level < difficulty.getLevelCount(); level++) {
+                        String separator = level == 0 ? "" : " ";
+                        Difficulty.Level settings = difficulty.getLevel(level);
+                        widths.append(separator).append(settings.getPaddleWidth());
+                        scores.append(separator).append(settings.getMinScore());
+                        cadences.append(separator).append(settings.getPowerUpCadence());
+                    }
+                    out.printf("%s,%s,%s,%.2f,%d,%d,%d,%.2f,%.2f,%.2f,%.4f%n", widths, scores, cadences,
+                            result.meanScore(), result.scorePercentile(50), result.scorePercentile(90),
+                            result.scorePercentile(100), result.meanSurvivalSeconds(),
+                            result.survivalPercentileSeconds(50), result.survivalPercentileSeconds(90),
+                            result.survivedShare());
+                }
+            }
+            System.out.println("Results written to " + Paths.get(csv).toAbsolutePath());
+        }
+    }
+}
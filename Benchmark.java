@@ -0,0 +1,193 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import javax.sound.midi.ShortMessage;
+import javax.swing.JLabel;
+
+// The Benchmark class measures the hot paths of the game: collision checks, the
+// simulation step and painting. Each benchmark reports operations per second and
+// the bytes allocated per operation.
+// Usage: java -Djava.awt.headless=true Benchmark [name filter]
+public class Benchmark {
+    // Timing of each benchmark
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+    private static final int ITERATIONS = 5;
+    private static final int BATCH = 64;
+
+    // Results are folded in here so the JIT cannot drop the work
+    private static volatile long sink;
+
+    // One benchmark operation, returns something to feed the sink
+    interface Op {
+        long run();
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        String filter = args.length > 0 ? args[0] : "";
+
+        System.out.printf("%-28s %14s %12s %12s%n", "Benchmark", "ops/s", "B/op", "MB/s");
+        for (String name : new String[] {
+                "intersects", "isCollidingWithPaddle",
+                "tick.15", "tick.1k", "tick.100k", "paint.15",
+                "particles.step.30k", "particles.draw.30k", "synth.render.16" }) {
+            if (name.contains(filter)) {
+                run(name, create(name));
+            }
+        }
+    }
+
+    // Build the operation for a named benchmark
+    private static Op create(String name) {
+        switch (name) {
+            case "intersects": {
+                Player player = new Player(400, 300, 0, 1);
+                Paddle paddle = new Paddle(390, 310);
+                return () -> player.intersects(paddle).ordinal();
+            }
+            case "isCollidingWithPaddle": {
+                Player player = new Player(400, 300, 0, 1);
+                Paddle paddle = new Paddle(390, 310);
+                return () -> player.isCollidingWithPaddle(paddle) ? 1 : 0;
+            }
+            case "tick.15":
+                return tick(createWorld(0));
+            case "tick.1k":
+                return tick(createWorld(1_000));
+            case "tick.100k":
+                return tick(createWorld(100_000));
+            case "paint.15": {
+                World world = createWorld(0);
+                Background background = new Background(new JLabel(), world);
+                background.setSize(World.WIDTH, World.HEIGHT);
+                BufferedImage image = new BufferedImage(World.WIDTH, World.HEIGHT, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = image.createGraphics();
+                return () -> {
+                    background.paintComponent(g);
+                    return image.getRGB(0, 0);
+                };
+            }
+            case "particles.step.30k": {
+                Particles particles = createParticles(30_000);
+                return () -> {
+                    refill(particles, 30_000);
+                    particles.step();
+                    return particles.getCount();
+                };
+            }
+            case "particles.draw.30k": {
+                Particles particles = createParticles(30_000);
+                BufferedImage image = new BufferedImage(World.WIDTH, World.HEIGHT, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = image.createGraphics();
+                return () -> {
+                    particles.draw(g, 0.5);
+                    return image.getRGB(0, 0);
+                };
+            }
+            case "synth.render.16": {
+                // One block with every voice sounding, a new note each block keeps them busy
+                SoftSynth synth = new SoftSynth();
+                byte[] out = new byte[SoftSynth.BLOCK_FRAMES * 2];
+                long[] block = {0};
+                return () -> {
+                    synth.send(0, ShortMessage.NOTE_ON, 36 + (int) (block[0] % 48), 100);
+                    synth.render(out, 0, SoftSynth.BLOCK_FRAMES, block[0]++);
+                    return out[1];
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unknown benchmark " + name);
+        }
+    }
+
+    // A fresh world with extra paddles on top of the usual ones
+    private static World createWorld(int extraPaddles) {
+        World world = new World(GameLoop.DEFAULT_TICK_RATE);
+        Random random = new Random(42);
+        for (int i = 0; i < extraPaddles; i++) {
+            world.addPaddle(new Paddle(
+                    random.nextInt(World.WIDTH - world.getPaddleWidth()), random.nextInt(World.HEIGHT)));
+        }
+        return world;
+    }
+
+    // Particles spread over the screen, a few steps old
+    private static Particles createParticles(int live) {
+        Particles particles = new Particles(World.WIDTH, World.HEIGHT, Particles.DEFAULT_CAPACITY);
+        for (int i = 0; i < 30; i++) {
+            refill(particles, live);
+            particles.step();
+        }
+        return particles;
+    }
+
+    // Top the particles back up to the given number with pickup bursts across the screen
+    private static void refill(Particles particles, int live) {
+        int burst = 0;
+        while (particles.getCount() < live) {
+            particles.pickup(40 + burst * 97 % (World.WIDTH - 80), 40 + burst * 61 % (World.HEIGHT - 80));
+            burst++;
+        }
+    }
+
+    // Step the world, keeping the player on screen so every step does the full work
+    private static Op tick(World world) {
+        return () -> {
+            Player player = world.getPlayer();
+            if (player.getY() > World.HEIGHT / 2) {
+                player.setY(0);
+                player.bounce();
+            }
+            world.step();
+            return world.getTick();
+        };
+    }
+
+    // Warm up, then measure a few fixed-length iterations
+    private static void run(String name, Op op) {
+        measure(op, WARMUP_NANOS);
+
+        double opsPerSecond = 0;
+        double bytesPerOp = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long threadId = Thread.currentThread().getId();
+            long bytesBefore = allocatedBytes(threadId);
+            long start = System.nanoTime();
+            long ops = measure(op, ITERATION_NANOS);
+            long elapsed = System.nanoTime() - start;
+            long bytes = allocatedBytes(threadId) - bytesBefore;
+
+            opsPerSecond += ops * 1e9 / elapsed / ITERATIONS;
+            bytesPerOp += (double) bytes / ops / ITERATIONS;
+        }
+
+        System.out.printf("%-28s %14.0f %12.1f %12.1f%n",
+                name, opsPerSecond, bytesPerOp, bytesPerOp * opsPerSecond / (1024 * 1024));
+    }
+
+    // Run the operation in batches for roughly the given time, returns the count
+    private static long measure(Op op, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long ops = 0;
+        long result = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < BATCH; i++) {
+                result += op.run();
+            }
+            ops += BATCH;
+        }
+        sink = result;
+        return ops;
+    }
+
+    // Bytes allocated so far by a thread, or 0 if the JVM cannot tell us
+    private static long allocatedBytes(long threadId) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(threadId);
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,77 @@
+// The Chart class is the lead line of a song, as loaded by ChartLoader: one note after
+// another, each with its start time, length, pitch and velocity. The notes are kept in
+// parallel arrays ordered by start time, so walking a chart during the game does not
+// allocate. The tempo at the first note gives the chart its beat.
+public class Chart {
+    private final String name;
+    private final int microsPerBeat;
+    private final long[] startMicros;
+    private final int[] durationMicros;
+    private final byte[] notes;
+    private final byte[] velocities;
+    private final int lowestNote;
+    private final int highestNote;
+
+    // Constructor, the arrays are used as they are
+    public Chart(String name, int microsPerBeat, long[] startMicros, int[] durationMicros,
+            byte[] notes, byte[] velocities) {
+        this.name = name;
+        this.microsPerBeat = microsPerBeat;
+        this.startMicros = startMicros;
+        this.durationMicros = durationMicros;
+        this.notes = notes;
+        this.velocities = velocities;
+        int low = 127;
+        int high = 0;
+        for (byte note : notes) {
+            low = Math.min(low, note);
+            high = Math.max(high, note);
+        }
+        this.lowestNote = notes.length > 0 ? low : 60;
+        this.highestNote = notes.length > 0 ? high : 60;
+    }
+
+    // Name of the file the chart was loaded from
+    public String getName() {
+        return name;
+    }
+
+    // Length of one beat (a quarter note)
+    public int getMicrosPerBeat() {
+        return microsPerBeat;
+    }
+
+    public int size() {
+        return notes.length;
+    }
+
+    public long getStartMicros(int index) {
+        return startMicros[index];
+    }
+
+    public int getDurationMicros(int index) {
+        return durationMicros[index];
+    }
+
+    public int getNote(int index) {
+        return notes[index];
+    }
+
+    public int getVelocity(int index) {
+        return velocities[index];
+    }
+
+    public int getLowestNote() {
+        return lowestNote;
+    }
+
+    public int getHighestNote() {
+        return highestNote;
+    }
+
+    // Length of the song, up to the end of its last note
+    public long getLengthMicros() {
+        int last = notes.length - 1;
+        return last < 0 ? 0 : startMicros[last] + durationMicros[last];
+    }
+}
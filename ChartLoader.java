@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+// The ChartLoader class turns a Standard MIDI File into a Chart. The lead line is taken
+// from the busiest melodic track, the tempo map is applied so every note gets its start
+// time in microseconds, and chords are reduced to their top note. The result is cached
+// in a binary sidecar file next to the song (song.mid.chart); as long as the song has
+// not changed, later loads map the sidecar into memory instead of parsing the MIDI file.
+public class ChartLoader {
+    // Sidecar layout: header, then start times, lengths, pitches and velocities
+    private static final int MAGIC = 0x4D474348; // "MGCH"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    private static final String SIDECAR_SUFFIX = ".chart";
+
+    // Drums are never part of the lead line
+    private static final int PERCUSSION_CHANNEL = 9;
+    // Tracks pitched lower than this on average are taken to be bass lines
+    private static final int LOWEST_LEAD_AVERAGE = 60;
+    private static final int META_TEMPO = 0x51;
+    private static final int DEFAULT_MICROS_PER_QUARTER = 500_000;
+
+    // Load a chart, from its sidecar if it is up to date, otherwise by parsing the song
+    public static Chart load(Path song) throws IOException {
+        Path sidecar = sidecarFor(song);
+        long size = Files.size(song);
+        long modified = Files.getLastModifiedTime(song).toMillis();
+        if (Files.exists(sidecar)) {
+            Chart chart = readSidecar(sidecar, song.toString(), size, modified);
+            if (chart != null) {
+                return chart;
+            }
+        }
+
+        Chart chart = parse(song);
+        try {
+            writeSidecar(sidecar, chart, size, modified);
+        } catch (IOException e) {
+            // The chart is still usable, it is just parsed again next time
+            e.printStackTrace();
+        }
+        return chart;
+    }
+
+    // The song named by -Dmusicgame.chart, dsfbgma.mid by default, or null if it is not there.
+    // The game and the headless runs all use this, so their paddles follow the same song.
+    public static Chart loadConfigured() {
+        Path song = Paths.get(System.getProperty("musicgame.chart", "dsfbgma.mid"));
+        if (!Files.exists(song)) {
+            return null;
+        }
+        try {
+            return load(song);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public static Path sidecarFor(Path song) {
+        return song.resolveSibling(song.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    // Parse the lead line out of a MIDI file
+    public static Chart parse(Path song) throws IOException {
+        Sequence sequence;
+        try {
+            sequence = MidiSystem.getSequence(song.toFile());
+        } catch (InvalidMidiDataException e) {
+            throw new IOException("Not a MIDI file: " + song, e);
+        }
+        TempoMap tempo = new TempoMap(sequence);
+        Track lead = findLeadTrack(sequence.getTracks());
+        if (lead == null) {
+            return new Chart(song.toString(), DEFAULT_MICROS_PER_QUARTER,
+                    new long[0], new int[0], new byte[0], new byte[0]);
+        }
+
+        // Pair note-ons with their note-offs, entries are {start tick, end tick, note, velocity}
+        ArrayList<long[]> found = new ArrayList<>();
+        long[] openedAt = new long[128];
+        int[] openedVelocity = new int[128];
+        Arrays.fill(openedAt, -1);
+        for (int i = 0; i < lead.size(); i++) {
+            MidiMessage message = lead.get(i).getMessage();
+            if (!(message instanceof ShortMessage)) {
+                continue;
+            }
+            ShortMessage shortMessage = (ShortMessage) message;
+            int command = shortMessage.getCommand();
+            if (command != ShortMessage.NOTE_ON && command != ShortMessage.NOTE_OFF) {
+                continue;
+            }
+            long tick = lead.get(i).getTick();
+            int note = shortMessage.getData1();
+            boolean on = command == ShortMessage.NOTE_ON && shortMessage.getData2() > 0;
+            if (openedAt[note] >= 0) {
+                found.add(new long[] {openedAt[note], tick, note, openedVelocity[note]});
+                openedAt[note] = -1;
+            }
+            if (on) {
+                openedAt[note] = tick;
+                openedVelocity[note] = shortMessage.getData2();
+            }
+        }
+
+        // Order by start, highest note first, and keep only the top note of each chord
+        found.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[2], a[2]));
+        int count = 0;
+        for (int i = 0; i < found.size(); i++) {
+            if (i == 0 || found.get(i)[0] != found.get(i - 1)[0]) {
+                found.set(count++, found.get(i));
+            }
+        }
+
+        long[] starts = new long[count];
+        int[] durations = new int[count];
+        byte[] notes = new byte[count];
+        byte[] velocities = new byte[count];
+        for (int i = 0; i < count; i++) {
+            long[] entry = found.get(i);
+            starts[i] = tempo.micros(entry[0]);
+            durations[i] = (int) Math.min(Integer.MAX_VALUE, tempo.micros(entry[1]) - starts[i]);
+            notes[i] = (byte) entry[2];
+            velocities[i] = (byte) entry[3];
+        }
+        int microsPerBeat = (int) tempo.microsPerQuarter(count > 0 ? found.get(0)[0] : 0);
+        return new Chart(song.toString(), microsPerBeat, starts, durations, notes, velocities);
+    }
+
+    // The melodic track with the most notes, preferring tracks that are not bass lines
+    private static Track findLeadTrack(Track[] tracks) {
+        Track best = null;
+        int bestNotes = 0;
+        boolean bestIsHigh = false;
+        for (Track track : tracks) {
+            int notes = 0;
+            long pitchSum = 0;
+            for (int i = 0; i < track.size(); i++) {
+                MidiMessage message = track.get(i).getMessage();
+                if (message instanceof ShortMessage) {
+                    ShortMessage shortMessage = (ShortMessage) message;
+                    if (shortMessage.getCommand() == ShortMessage.NOTE_ON && shortMessage.getData2() > 0
+                            && shortMessage.getChannel() != PERCUSSION_CHANNEL) {
+                        notes++;
+                        pitchSum += shortMessage.getData1();
+                    }
+                }
+            }
+            if (notes == 0) {
+                continue;
+            }
+            boolean high = pitchSum / notes >= LOWEST_LEAD_AVERAGE;
+            if (best == null || (high && !bestIsHigh) || (high == bestIsHigh && notes > bestNotes)) {
+                best = track;
+                bestNotes = notes;
+                bestIsHigh = high;
+            }
+        }
+        return best;
+    }
+
+    // Read a sidecar through a memory map, returns null if it is missing, stale or damaged
+    private static Chart readSidecar(Path sidecar, String name, long size, long modified) {
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC || in.getInt() != VERSION
+                    || in.getLong() != size || in.getLong() != modified) {
+                return null;
+            }
+            int count = in.getInt();
+            int microsPerBeat = in.getInt();
+            if (count < 0 || in.remaining() != count * 14L) {
+                return null;
+            }
+            long[] starts = new long[count];
+            int[] durations = new int[count];
+            byte[] notes = new byte[count];
+            byte[] velocities = new byte[count];
+            in.asLongBuffer().get(starts);
+            in.position(in.position() + count * 8);
+            in.asIntBuffer().get(durations);
+            in.position(in.position() + count * 4);
+            in.get(notes);
+            in.get(velocities);
+            return new Chart(name, microsPerBeat, starts, durations, notes, velocities);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Write a sidecar next to the song, replacing the old one in a single step
+    private static void writeSidecar(Path sidecar, Chart chart, long size, long modified) throws IOException {
+        int count = chart.size();
+        Path temporary = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + count * 14L);
+            out.putInt(MAGIC).putInt(VERSION).putLong(size).putLong(modified).putInt(count).putInt(chart.getMicrosPerBeat());
+            for (int i = 0; i < count; i++) {
+                out.putLong(chart.getStartMicros(i));
+            }
+            for (int i = 0; i < count; i++) {
+                out.putInt(chart.getDurationMicros(i));
+            }
+            for (int i = 0; i < count; i++) {
+                out.put((byte) chart.getNote(i));
+            }
+            for (int i = 0; i < count; i++) {
+                out.put((byte) chart.getVelocity(i));
+            }
+            // On disk before the rename, so a crash never leaves a half-written sidecar
+            out.force();
+        }
+        Files.move(temporary, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Converts MIDI ticks to microseconds, following every tempo change in the song
+    private static final class TempoMap {
+        private final long[] ticks;
+        private final long[] micros;
+        private final long[] microsPerQuarter;
+        private final int resolution;
+        private final double ticksPerSecond;
+
+        TempoMap(Sequence sequence) {
+            resolution = sequence.getResolution();
+            float division = sequence.getDivisionType();
+            ticksPerSecond = division == Sequence.PPQ ? 0 : division * resolution;
+
+            // Tempo changes from every track, in order
+            ArrayList<long[]> changes = new ArrayList<>();
+            for (Track track : sequence.getTracks()) {
+                for (int i = 0; i < track.size(); i++) {
+                    MidiMessage message = track.get(i).getMessage();
+                    if (message instanceof MetaMessage && ((MetaMessage) message).getType() == META_TEMPO) {
+                        byte[] data = ((MetaMessage) message).getData();
+                        if (data.length == 3) {
+                            long value = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+                            changes.add(new long[] {track.get(i).getTick(), value});
+                        }
+                    }
+                }
+            }
+            changes.sort((a, b) -> Long.compare(a[0], b[0]));
+
+            int count = changes.size() + 1;
+            ticks = new long[count];
+            micros = new long[count];
+            microsPerQuarter = new long[count];
+            microsPerQuarter[0] = DEFAULT_MICROS_PER_QUARTER;
+            for (int i = 1; i < count; i++) {
+                long[] change = changes.get(i - 1);
+                ticks[i] = change[0];
+                micros[i] = micros[i - 1] + (ticks[i] - ticks[i - 1]) * microsPerQuarter[i - 1] / resolution;
+                microsPerQuarter[i] = change[1];
+            }
+        }
+
+        long micros(long tick) {
+            if (ticksPerSecond > 0) {
+                return (long) (tick * 1_000_000L / ticksPerSecond);
+            }
+            int segment = segmentOf(tick);
+            return micros[segment] + (tick - ticks[segment]) * microsPerQuarter[segment] / resolution;
+        }
+
+        // Tempo in effect at the given tick
+        long microsPerQuarter(long tick) {
+            if (ticksPerSecond > 0) {
+                return (long) (resolution * 1_000_000L / ticksPerSecond);
+            }
+            return microsPerQuarter[segmentOf(tick)];
+        }
+
+        private int segmentOf(long tick) {
+            int segment = Arrays.binarySearch(ticks, tick);
+            if (segment < 0) {
+                segment = -segment - 2;
+            }
+            while (segment + 1 < ticks.length && ticks[segment + 1] == tick) {
+                segment++;
+            }
+            return segment;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+// The Collision class holds the collision tests used by the simulation. Every test
+// works on primitive ints and allocates nothing, so it is safe to call for every
+// entity on every tick.
+public final class Collision {
+    private Collision() {
+    }
+
+    // Check if two axis-aligned rectangles overlap, with the same rules as
+    // java.awt.Rectangle.intersects (touching edges do not count)
+    public static boolean overlaps(int ax, int ay, int aw, int ah,
+                                   int bx, int by, int bw, int bh) {
+        if (aw <= 0 || ah <= 0 || bw <= 0 || bh <= 0) {
+            return false;
+        }
+        return bx < ax + aw && by < ay + ah && ax < bx + bw && ay < by + bh;
+    }
+
+    // Check if rectangle b lies within or touches rectangle a (Control.intersects rules)
+    public static boolean touches(int ax, int ay, int aw, int ah,
+                                  int bx, int by, int bw, int bh) {
+        return !(bx > ax + aw || by > ay + ah || bx + bw < ax || by + bh < ay);
+    }
+
+    // Classify which side of rectangle a the centre of rectangle b lies on.
+    // The diagonals of a split the plane into four sectors, so instead of
+    // comparing atan2 angles we compare the slopes by cross-multiplying.
+    public static Intersection direction(int ax, int ay, int aw, int ah,
+                                         int bx, int by, int bw, int bh) {
+        long dx = bx + bw / 2 - (ax + aw / 2);
+        long dy = by + bh / 2 - (ay + ah / 2);
+        long absDy = Math.abs(dy);
+
+        if (absDy * aw <= dx * ah) {
+            return Intersection.RIGHT;
+        }
+        if (absDy * aw <= -dx * ah) {
+            return Intersection.LEFT;
+        }
+        return dy > 0 ? Intersection.DOWN : Intersection.UP;
+    }
+
+    // Check if a circle overlaps a rectangle, using the closest point of the
+    // rectangle to the circle's centre
+    public static boolean circleIntersectsRect(int cx, int cy, int radius,
+                                               int rx, int ry, int rw, int rh) {
+        int nearestX = Math.max(rx, Math.min(cx, rx + rw));
+        int nearestY = Math.max(ry, Math.min(cy, ry + rh));
+        long distX = cx - nearestX;
+        long distY = cy - nearestY;
+        return distX * distX + distY * distY < (long) radius * radius;
+    }
+}
@@ -6,12 +6,19 @@ public abstract class Control {
     int x;
     int y;
 
+    // Position at the previous simulation step, used to interpolate rendering
+    int prevX;
+    int prevY;
+
+    // Movements larger than this are teleports and are not interpolated
+    private static final int MAX_INTERPOLATION = 64;
+
     // Gravity constant
     static final double GRAVITY = 0.4;
 
     // Dimensions of the object
     int width;
-    static int height;
+    int height;
 
     // Velocity of the object
     int velocityX; // Pixels to move horizontally each time move() is called
@@ -25,16 +32,18 @@ public abstract class Control {
     public Control(int x, int y, int velocityX, int velocityY, int width, int height) {
         this.x = x;
         this.y = y;
+        this.prevX = x;
+        this.prevY = y;
         this.velocityX = velocityX;
         this.velocityY = velocityY;
         this.width = width;
-        Control.height = height;
+        this.height = height;
     }
 
     // Set the bounds for the object within the game area
     public void setBounds(int width, int height) {
         rightBound = width - this.width;
-        bottomBound = height - Control.height;
+        bottomBound = height - this.height;
     }
 
     // Set the velocity of the object
@@ -69,48 +78,76 @@ public abstract class Control {
     }
 
     public Intersection intersects(Control control) {
-        Rectangle rectangle = control.getBounds(); // Assuming getBounds() returns a Rectangle
+        int cx = control.getX();
+        int cy = control.getY();
+        int cw = control.getBoundsWidth();
+        int ch = control.getBoundsHeight();
 
         // Check for intersection between this object and another object
-        if (rectangle.x > x + width
-                || rectangle.y > y + height
-                || rectangle.x + rectangle.width < x
-                || rectangle.y + rectangle.height < y)
+        if (!Collision.touches(x, y, width, height, cx, cy, cw, ch))
             return Intersection.NONE;
 
-        // Compute the direction of intersection
-        double dx = rectangle.x + rectangle.width / 2 - (x + width / 2);
-        double dy = rectangle.y + rectangle.height / 2 - (y + height / 2);
-
-        double theta = Math.atan2(dy, dx);
-        double diagTheta = Math.atan2(height, width);
-
         // If the object is a Player and it intersects with a Paddle, make it bounce
         if (this instanceof Player && control instanceof Paddle) {
             // Reverse the y velocity to make the player bounce
             velocityY = -Math.abs(velocityY);
         }
 
-        // Determine the direction of intersection based on the angle
-        // Return the corresponding Intersection value
-        if (-diagTheta <= theta && theta <= diagTheta)
-            return Intersection.RIGHT;
-        if (Math.PI - diagTheta <= theta || theta <= diagTheta - Math.PI)
-            return Intersection.LEFT;
-        if (diagTheta <= theta && theta <= Math.PI - diagTheta)
-            return Intersection.DOWN;
-        if (diagTheta - Math.PI <= theta && theta <= diagTheta)
-            return Intersection.UP;
+        // Determine the direction of intersection from the centres of both objects
+        return Collision.direction(x, y, width, height, cx, cy, cw, ch);
+    }
+
+    // Remember the current position before the next simulation step
+    public void savePosition() {
+        prevX = x;
+        prevY = y;
+    }
+
+    // Interpolated x-coordinate between the previous and current step
+    int renderX(double alpha) {
+        return interpolate(prevX, x, alpha);
+    }
+
+    // Interpolated y-coordinate between the previous and current step
+    int renderY(double alpha) {
+        return interpolate(prevY, y, alpha);
+    }
+
+    private static int interpolate(int from, int to, double alpha) {
+        if (Math.abs(to - from) > MAX_INTERPOLATION) {
+            return to;
+        }
+        return (int) Math.round(from + (to - from) * alpha);
+    }
 
-        return Intersection.NONE;
+    // Draw the object at its current position
+    public void draw(Graphics g) {
+        draw(g, 1.0);
     }
 
     // Abstract methods to be implemented by subclasses
 
-    public abstract void draw(Graphics g);
+    public abstract void draw(Graphics g, double alpha);
 
     // Method to get the bounds of the object
     public Rectangle getBounds() {
-        return new Rectangle(x, y, width, height);
+        return new Rectangle(x, y, getBoundsWidth(), getBoundsHeight());
+    }
+
+    // Position and size of the bounds, without allocating a Rectangle
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getBoundsWidth() {
+        return width;
+    }
+
+    public int getBoundsHeight() {
+        return height;
     }
 }
\ No newline at end of file
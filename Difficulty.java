@@ -0,0 +1,255 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// The Difficulty class is the level table: for every level, the score it starts at, the
+// paddle width, how often a power-up is handed out, the background color and the scale
+// played on bounces. STANDARD is the game as it has always played. Other tables are
+// loaded from a text file (see levels.txt), so levels can be added or retuned without
+// touching the code, and the batch evaluator builds its own to tune the curve.
+public class Difficulty {
+    // Scales played on bounces, one for each of the first levels
+    private static final int[] FIRST_SCALE = {
+        64, 71, 73, 64, 71, 73, 64, 71, 73, 71, 69, 67, 71, 69, 67,
+        71, 64, 64, 71, 73, 64, 71, 73, 64, 71, 73, 71, 69, 67, 71,
+        69, 67, 71, 64, 64, 71, 73, 64, 71, 73, 64, 71, 73, 71, 69,
+        67, 71, 69, 67, 71
+    };
+    private static final int[] SECOND_SCALE = {
+        46, 49, 51, 52, 54, 46, 49, 51, 52, 54, 46, 49, 51, 52, 54,
+        46, 49, 51, 52, 54
+    };
+    private static final int[] THIRD_SCALE = {
+        42, 45, 47, 48, 50, 42, 45, 47, 48, 50, 42, 45, 47, 48, 50,
+        42, 45, 47, 48, 50
+    };
+    private static final int[] FOURTH_SCALE = {
+        38, 41, 43, 44, 46, 38, 41, 43, 44, 46, 38, 41, 43, 44, 46,
+        38, 41, 43, 44, 46
+    };
+    private static final int[] FIFTH_SCALE = {
+        34, 37, 39, 40, 42, 34, 37, 39, 40, 42, 34, 37, 39, 40, 42,
+        34, 37, 39, 40, 42
+    };
+
+    public static final Difficulty STANDARD = new Difficulty("", new Level[] {
+        new Level(0, 70, 75, 245, 245, 220, 0, FIRST_SCALE),
+        new Level(100, 60, 75, 195, 195, 170, -4, SECOND_SCALE),
+        new Level(200, 50, 75, 145, 145, 120, -8, THIRD_SCALE),
+        new Level(300, 40, 75, 95, 95, 70, -12, FOURTH_SCALE),
+        new Level(400, 30, 75, 45, 45, 20, -16, FIFTH_SCALE),
+        new Level(500, 20, 75, 0, 0, 0, -16, FIFTH_SCALE)
+    });
+
+    // Everything that changes from one level to the next
+    public static final class Level {
+        private final int minScore;
+        private final int paddleWidth;
+        private final int powerUpCadence;
+        private final int red;
+        private final int green;
+        private final int blue;
+        private final int transpose;
+        private final int[] scale;
+
+        // Constructor
+        public Level(int minScore, int paddleWidth, int powerUpCadence, int red, int green, int blue,
+                int transpose, int[] scale) {
+            if (minScore < 0 || paddleWidth <= 0 || powerUpCadence <= 0 || scale.length == 0) {
+                throw new IllegalArgumentException("Level needs a score, a width, a cadence and a scale");
+            }
+            if ((red | green | blue) < 0 || Math.max(red, Math.max(green, blue)) > 255) {
+                throw new IllegalArgumentException("Level color out of range");
+            }
+            // The paddle has to fit on the screen, World.readState checks the same
+            if (paddleWidth >= World.WIDTH) {
+                throw new IllegalArgumentException("Level paddle width must be less than " + World.WIDTH);
+            }
+            for (int note : scale) {
+                if (note < 0 || note > 127) {
+                    throw new IllegalArgumentException("Level note out of range: " + note);
+                }
+            }
+            this.minScore = minScore;
+            this.paddleWidth = paddleWidth;
+            this.powerUpCadence = powerUpCadence;
+            this.red = red;
+            this.green = green;
+            this.blue = blue;
+            this.transpose = transpose;
+            this.scale = scale.clone();
+        }
+
+        // Score at which the level starts
+        public int getMinScore() {
+            return minScore;
+        }
+
+        public int getPaddleWidth() {
+            return paddleWidth;
+        }
+
+        public int getPowerUpCadence() {
+            return powerUpCadence;
+        }
+
+        public int getRed() {
+            return red;
+        }
+
+        public int getGreen() {
+            return green;
+        }
+
+        public int getBlue() {
+            return blue;
+        }
+
+        // Semitones a song's notes are moved by on this level
+        public int getTranspose() {
+            return transpose;
+        }
+
+        public int getScaleLength() {
+            return scale.length;
+        }
+
+        public int getScaleNote(int index) {
+            return scale[index];
+        }
+
+        // True if both levels play the same notes
+        public boolean soundsLike(Level other) {
+            return transpose == other.transpose && Arrays.equals(scale, other.scale);
+        }
+    }
+
+    private final String source;
+    private final Level[] levels;
+
+    // Constructor, levels must start at score 0 and go up
+    public Difficulty(String source, Level[] levels) {
+        if (levels.length == 0 || levels[0].minScore != 0) {
+            throw new IllegalArgumentException("The first level must start at score 0");
+        }
+        for (int i = 1; i < levels.length; i++) {
+            if (levels[i].minScore <= levels[i - 1].minScore) {
+                throw new IllegalArgumentException("Level " + i + " does not start after level " + (i - 1));
+            }
+        }
+        this.source = source;
+        this.levels = levels.clone();
+    }
+
+    // Standard levels with their widths shrinking by a step, never below the minimum,
+    // a new level every few points and the same power-up cadence throughout
+    public static Difficulty stepped(int firstWidth, int widthStep, int levelCount, int minWidth,
+            int pointsPerLevel, int powerUpCadence) {
+        Level[] levels = new Level[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            Level look = STANDARD.getLevel(Math.min(i, STANDARD.getLevelCount() - 1));
+            levels[i] = new Level(i * pointsPerLevel, Math.max(minWidth, firstWidth - i * widthStep),
+                    powerUpCadence, look.red, look.green, look.blue, look.transpose, look.scale);
+        }
+        return new Difficulty("", levels);
+    }
+
+    // Level table named by -Dmusicgame.levels, levels.txt by default, the standard one without it.
+    // The game and the headless runs all use this, so they play the same levels.
+    public static Difficulty loadConfigured() {
+        Path file = Paths.get(System.getProperty("musicgame.levels", "levels.txt"));
+        if (!Files.exists(file)) {
+            return STANDARD;
+        }
+        try {
+            return load(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return STANDARD;
+        }
+    }
+
+    // Load a level table. Each line is one level:
+    //   score width power-up-cadence red green blue transpose note note note ...
+    // Blank lines and everything after a # are ignored.
+    public static Difficulty load(Path file) throws IOException {
+        ArrayList<Level> levels = new ArrayList<>();
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                String text = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (text.isEmpty()) {
+                    continue;
+                }
+                String[] fields = text.split("\\s+");
+                if (fields.length < 8) {
+                    throw new IOException(file + ":" + lineNumber + ": expected score, width, cadence, "
+                            + "red, green, blue, transpose and at least one note");
+                }
+                try {
+                    int[] values = new int[fields.length];
+                    for (int i = 0; i < fields.length; i++) {
+                        values[i] = Integer.parseInt(fields[i]);
+                    }
+                    levels.add(new Level(values[0], values[1], values[2], values[3], values[4], values[5],
+                            values[6], Arrays.copyOfRange(values, 7, values.length)));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        try {
+            return new Difficulty(file.toString(), levels.toArray(new Level[0]));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Level for a score, the last level lasts forever
+    public int levelFor(int score) {
+        int level = levels.length - 1;
+        while (level > 0 && score < levels[level].minScore) {
+            level--;
+        }
+        return level;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    public Level getLevel(int level) {
+        return levels[level];
+    }
+
+    // Score at which the level after the given one starts, MAX_VALUE on the last level
+    public int nextLevelScore(int level) {
+        return level + 1 < levels.length ? levels[level + 1].minScore : Integer.MAX_VALUE;
+    }
+
+    // File the table was loaded from, empty for tables built in code
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        int[] widths = new int[levels.length];
+        int[] scores = new int[levels.length];
+        int[] cadences = new int[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            widths[i] = levels[i].paddleWidth;
+            scores[i] = levels[i].minScore;
+            cadences[i] = levels[i].powerUpCadence;
+        }
+        return "widths " + Arrays.toString(widths) + " at scores " + Arrays.toString(scores)
+                + " power-ups every " + Arrays.toString(cadences);
+    }
+}
@@ -0,0 +1,183 @@
+// The EffectScheduler class runs timed game effects, such as cooldowns and power-up
+// durations, in game time. It is a hashed timing wheel: scheduling an effect is O(1)
+// and each tick only looks at one slot of the wheel. Effects fire inside the
+// simulation step, so they pause with the game and never touch the Swing timer queue.
+// Nodes are recycled, so scheduling a prebuilt effect does not allocate.
+public class EffectScheduler {
+    // Number of slots in the wheel, must be a power of two
+    private static final int WHEEL_SIZE = 512;
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    // Something that happens when its time is up
+    public interface Effect {
+        void expire();
+    }
+
+    // An effect that belongs to a game object, so a saved game can refer to it by owner and code
+    public static final class Owned implements Effect {
+        private final Object owner;
+        private final int code;
+        private final Effect action;
+
+        public Owned(Object owner, int code, Effect action) {
+            this.owner = owner;
+            this.code = code;
+            this.action = action;
+        }
+
+        @Override
+        public void expire() {
+            action.expire();
+        }
+
+        public Object getOwner() {
+            return owner;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
+    // Receives the pending effects, see forEachPending
+    public interface Visitor {
+        void pending(long deadline, Effect effect);
+    }
+
+    // One scheduled effect, linked into a slot of the wheel
+    private static final class Node {
+        long deadline;
+        Effect effect;
+        Node next;
+    }
+
+    private final int tickRate;
+    private final Node[] slots = new Node[WHEEL_SIZE];
+    private Node free;
+    private long now;
+    private int pending;
+
+    // Constructor
+    public EffectScheduler(int tickRate) {
+        this.tickRate = tickRate;
+    }
+
+    // Run the effect after the given number of ticks (at least one)
+    public void schedule(long delayTicks, Effect effect) {
+        Node node = free;
+        if (node != null) {
+            free = node.next;
+        } else {
+            node = new Node();
+        }
+        node.deadline = now + Math.max(1, delayTicks);
+        node.effect = effect;
+
+        int slot = (int) (node.deadline & MASK);
+        node.next = slots[slot];
+        slots[slot] = node;
+        pending++;
+    }
+
+    // Run the effect after the given number of milliseconds of game time
+    public void scheduleMillis(long millis, Effect effect) {
+        schedule(ticksFor(millis), effect);
+    }
+
+    // Advance by one tick and fire every effect that is due
+    public void advance() {
+        now++;
+        int slot = (int) (now & MASK);
+        Node node = slots[slot];
+        slots[slot] = null;
+
+        while (node != null) {
+            Node next = node.next;
+            if (node.deadline <= now) {
+                Effect effect = node.effect;
+                node.effect = null;
+                node.next = free;
+                free = node;
+                pending--;
+                effect.expire();
+            } else {
+                // Due on a later turn of the wheel
+                node.next = slots[slot];
+                slots[slot] = node;
+            }
+            node = next;
+        }
+    }
+
+    // Drop every pending effect
+    public void clear() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            Node node = slots[i];
+            while (node != null) {
+                Node next = node.next;
+                node.effect = null;
+                node.next = free;
+                free = node;
+                node = next;
+            }
+            slots[i] = null;
+        }
+        pending = 0;
+    }
+
+    // Visit every pending effect, slot by slot in the order they will fire
+    public void forEachPending(Visitor visitor) {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            for (Node node = slots[i]; node != null; node = node.next) {
+                visitor.pending(node.deadline, node.effect);
+            }
+        }
+    }
+
+    // Drop every pending effect and continue from the given tick, used to restore a saved game
+    public void clearAt(long tick) {
+        clear();
+        now = tick;
+    }
+
+    // Schedule an effect for an exact tick, behind the effects already in its slot.
+    // Scheduling in forEachPending order rebuilds the wheel exactly as it was.
+    public void scheduleAt(long deadline, Effect effect) {
+        Node node = free;
+        if (node != null) {
+            free = node.next;
+        } else {
+            node = new Node();
+        }
+        node.deadline = Math.max(now + 1, deadline);
+        node.effect = effect;
+        node.next = null;
+
+        int slot = (int) (node.deadline & MASK);
+        if (slots[slot] == null) {
+            slots[slot] = node;
+        } else {
+            Node last = slots[slot];
+            while (last.next != null) {
+                last = last.next;
+            }
+            last.next = node;
+        }
+        pending++;
+    }
+
+    // Convert game time in milliseconds to ticks
+    public long ticksFor(long millis) {
+        return Math.max(1, Math.round(millis * tickRate / 1000.0));
+    }
+
+    // Number of effects waiting to fire
+    public int getPendingCount() {
+        return pending;
+    }
+
+    // Ticks advanced since the scheduler was created
+    public long getTick() {
+        return now;
+    }
+}
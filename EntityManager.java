@@ -0,0 +1,142 @@
+import java.util.ArrayDeque;
+
+// The EntityManager class hands out paddles and power-ups from object pools with a hard
+// cap per type, and takes them back when they leave the game. Long sessions therefore
+// reuse the same objects instead of growing the heap. Counters make leaks visible: the
+// number of live entities should always match what the world holds.
+public class EntityManager {
+    // Default caps on live entities
+    public static final int DEFAULT_MAX_PADDLES = 4096;
+    public static final int DEFAULT_MAX_POWER_UPS = 8;
+
+    private final int maxPaddles;
+    private final int maxPowerUps;
+    private final ArrayDeque<Paddle> freePaddles = new ArrayDeque<>();
+    private final ArrayDeque<PowerUp> freePowerUps = new ArrayDeque<>();
+
+    // Counters
+    private int livePaddles;
+    private int livePowerUps;
+    private long paddlesCreated;
+    private long paddlesReused;
+    private long paddlesRejected;
+    private long powerUpsCreated;
+    private long powerUpsReused;
+    private long powerUpsRejected;
+
+    // Constructor with the default caps
+    public EntityManager() {
+        this(DEFAULT_MAX_PADDLES, DEFAULT_MAX_POWER_UPS);
+    }
+
+    // Constructor
+    public EntityManager(int maxPaddles, int maxPowerUps) {
+        this.maxPaddles = maxPaddles;
+        this.maxPowerUps = maxPowerUps;
+    }
+
+    // Get a paddle at the given position, or null if the cap is reached
+    public Paddle obtainPaddle(int x, int y) {
+        if (livePaddles >= maxPaddles) {
+            paddlesRejected++;
+            return null;
+        }
+        livePaddles++;
+        Paddle paddle = freePaddles.poll();
+        if (paddle == null) {
+            paddlesCreated++;
+            return new Paddle(x, y);
+        }
+        paddlesReused++;
+        paddle.reinitialize(x, y);
+        return paddle;
+    }
+
+    // Count a paddle that was created outside the pool, caps do not apply
+    public void adoptPaddle(Paddle paddle) {
+        livePaddles++;
+    }
+
+    // Give a paddle back once it has left the game
+    public void releasePaddle(Paddle paddle) {
+        livePaddles--;
+        freePaddles.push(paddle);
+    }
+
+    // Get a power-up at the given position, or null if the cap is reached
+    public PowerUp obtainPowerUp(int x, int y) {
+        if (livePowerUps >= maxPowerUps) {
+            powerUpsRejected++;
+            return null;
+        }
+        livePowerUps++;
+        PowerUp powerUp = freePowerUps.poll();
+        if (powerUp == null) {
+            powerUpsCreated++;
+            return new PowerUp(x, y);
+        }
+        powerUpsReused++;
+        powerUp.reinitialize(x, y);
+        return powerUp;
+    }
+
+    // Count a power-up that was created outside the pool, caps do not apply
+    public void adoptPowerUp(PowerUp powerUp) {
+        livePowerUps++;
+    }
+
+    // Give a power-up back once it has left the game
+    public void releasePowerUp(PowerUp powerUp) {
+        livePowerUps--;
+        freePowerUps.push(powerUp);
+    }
+
+    // Getters for the counters
+    public int getLivePaddles() {
+        return livePaddles;
+    }
+
+    public int getPooledPaddles() {
+        return freePaddles.size();
+    }
+
+    public long getPaddlesCreated() {
+        return paddlesCreated;
+    }
+
+    public long getPaddlesReused() {
+        return paddlesReused;
+    }
+
+    public long getPaddlesRejected() {
+        return paddlesRejected;
+    }
+
+    public int getLivePowerUps() {
+        return livePowerUps;
+    }
+
+    public int getPooledPowerUps() {
+        return freePowerUps.size();
+    }
+
+    public long getPowerUpsCreated() {
+        return powerUpsCreated;
+    }
+
+    public long getPowerUpsReused() {
+        return powerUpsReused;
+    }
+
+    public long getPowerUpsRejected() {
+        return powerUpsRejected;
+    }
+
+    public int getMaxPaddles() {
+        return maxPaddles;
+    }
+
+    public int getMaxPowerUps() {
+        return maxPowerUps;
+    }
+}
@@ -0,0 +1,25 @@
+// The FpsCounter class measures how many frames were actually shown per second.
+public class FpsCounter {
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private long windowStart = System.nanoTime();
+    private int framesInWindow;
+    private volatile double fps;
+
+    // Call once for every frame that reached the screen
+    public void frame() {
+        framesInWindow++;
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed >= WINDOW_NANOS) {
+            fps = framesInWindow * 1e9 / elapsed;
+            framesInWindow = 0;
+            windowStart = now;
+        }
+    }
+
+    // Frames per second over the last full second
+    public double getFps() {
+        return fps;
+    }
+}
@@ -0,0 +1,81 @@
+import java.awt.Canvas;
+import java.awt.Dimension;
+import java.awt.DisplayMode;
+import java.awt.Graphics;
+import java.awt.GraphicsDevice;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+
+// The GameCanvas class renders the game actively: the game loop draws each frame
+// into a BufferStrategy back buffer and flips it, exactly once per loop iteration,
+// without going through Swing's RepaintManager.
+public class GameCanvas extends Canvas {
+    private static final int BUFFERS = 2;
+
+    private final Background scene;
+    private final boolean vsync;
+    private final FpsCounter fps = new FpsCounter();
+    private BufferStrategy strategy;
+
+    // Constructor
+    public GameCanvas(Background scene, boolean vsync) {
+        this.scene = scene;
+        this.vsync = vsync;
+        setPreferredSize(new Dimension(World.WIDTH, World.HEIGHT));
+        setIgnoreRepaint(true);
+        setFocusable(false);
+    }
+
+    // Create the back buffers, the canvas must already be on screen.
+    // Returns false if active rendering is not available here.
+    public boolean createStrategy() {
+        try {
+            createBufferStrategy(BUFFERS);
+            strategy = getBufferStrategy();
+            return strategy != null;
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Draw one frame and show it, called from the game loop thread
+    public void renderFrame(double alpha) {
+        if (strategy == null) {
+            return;
+        }
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    scene.drawScene(g, alpha);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+
+        if (vsync) {
+            // Flush the window system so the frame is presented now
+            Toolkit.getDefaultToolkit().sync();
+        }
+        fps.frame();
+    }
+
+    // Frames per second that actually reached the screen
+    public double getFps() {
+        return fps.getFps();
+    }
+
+    // Refresh rate of the screen showing this canvas, or 0 if unknown
+    public int getRefreshRate() {
+        GraphicsDevice device = getGraphicsConfiguration() != null
+                ? getGraphicsConfiguration().getDevice() : null;
+        if (device == null) {
+            return 0;
+        }
+        DisplayMode mode = device.getDisplayMode();
+        return mode.getRefreshRate() == DisplayMode.REFRESH_RATE_UNKNOWN ? 0 : mode.getRefreshRate();
+    }
+}
@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+// The GameClient class is the other end of GameServer: it joins a game, sends the
+// player's direction, and rebuilds the server's snapshots of its world from the deltas
+// it receives. Every input packet acknowledges the newest snapshot rebuilt so far, which
+// the server then uses as the baseline for the following ones. The client never blocks;
+// poll() takes whatever has arrived.
+public class GameClient {
+    private final DatagramChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(NetProtocol.MAX_PACKET_BYTES);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(NetProtocol.MAX_PACKET_BYTES);
+
+    // Snapshots rebuilt recently, by sequence number
+    private final int[][] history = new int[NetProtocol.HISTORY][];
+    private final int[] historyLength = new int[NetProtocol.HISTORY];
+    private final long[] historySequence = new long[NetProtocol.HISTORY];
+    private long latestSequence = -1;
+    private int[] latest;
+    private int latestLength;
+    private long latestTick = -1;
+
+    // Directions sent for the most recent ticks, repeated in every input packet
+    private final long[] inputTicks = new long[NetProtocol.INPUT_REDUNDANCY];
+    private final byte[] inputDirections = new byte[NetProtocol.INPUT_REDUNDANCY];
+
+    // Game settings from the server's welcome
+    private int tickRate;
+    private long seed;
+
+    // Statistics
+    private long bytesReceived;
+    private long snapshotsReceived;
+
+    // Constructor, opens a channel to the server
+    public GameClient(InetSocketAddress server) throws IOException {
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(server);
+        Arrays.fill(historySequence, -1);
+        for (int i = 0; i < NetProtocol.HISTORY; i++) {
+            history[i] = new int[256];
+        }
+        latest = history[0];
+    }
+
+    // Join the game, or start a new one after game over
+    public void join() throws IOException {
+        Arrays.fill(inputTicks, -1);
+        latestTick = -1;
+        out.clear();
+        out.put(NetProtocol.JOIN).putInt(NetProtocol.VERSION);
+        out.flip();
+        channel.write(out);
+    }
+
+    // Leave the game and close the channel
+    public void close() throws IOException {
+        out.clear();
+        out.put(NetProtocol.LEAVE);
+        out.flip();
+        channel.write(out);
+        channel.close();
+    }
+
+    // Take every packet that has arrived, returns true if there is a newer snapshot
+    public boolean poll() throws IOException {
+        boolean updated = false;
+        while (true) {
+            in.clear();
+            if (channel.receive(in) == null) {
+                return updated;
+            }
+            in.flip();
+            bytesReceived += in.remaining();
+            byte type = in.get();
+            if (type == NetProtocol.WELCOME) {
+                tickRate = in.getInt();
+                seed = in.getLong();
+            } else if (type == NetProtocol.SNAPSHOT) {
+                updated |= readSnapshot();
+            }
+        }
+    }
+
+    private boolean readSnapshot() {
+        long sequence = NetProtocol.getVarInt(in);
+        long base = NetProtocol.getVarInt(in) - 1L;
+        long tick = NetProtocol.getVarInt(in);
+        int baseSlot = (int) (Math.max(base, 0) % NetProtocol.HISTORY);
+        if (base >= 0 && historySequence[baseSlot] != base) {
+            // The baseline is gone, wait for a snapshot built on one we still have
+            return false;
+        }
+
+        int slot = (int) (sequence % NetProtocol.HISTORY);
+        int length = NetProtocol.peekLength(in);
+        if (history[slot].length < length) {
+            int[] grown = new int[Math.max(length, history[slot].length * 2)];
+            if (slot == baseSlot) {
+                System.arraycopy(history[slot], 0, grown, 0, historyLength[slot]);
+            }
+            history[slot] = grown;
+        }
+        if (base >= 0) {
+            NetProtocol.readDelta(in, history[baseSlot], historyLength[baseSlot], history[slot]);
+        } else {
+            NetProtocol.readDelta(in, history[slot], 0, history[slot]);
+        }
+        historyLength[slot] = length;
+        historySequence[slot] = sequence;
+        snapshotsReceived++;
+
+        if (sequence <= latestSequence) {
+            return false;
+        }
+        latestSequence = sequence;
+        latest = history[slot];
+        latestLength = length;
+        latestTick = tick;
+        return true;
+    }
+
+    // Send the direction for the tick after the newest snapshot, with the ones before it
+    public void sendInput(int direction) throws IOException {
+        long tick = latestTick + 1;
+        int slot = (int) (tick % NetProtocol.INPUT_REDUNDANCY);
+        inputTicks[slot] = tick;
+        inputDirections[slot] = (byte) direction;
+
+        long first = Math.max(0, tick - NetProtocol.INPUT_REDUNDANCY + 1);
+        while (inputTicks[(int) (first % NetProtocol.INPUT_REDUNDANCY)] != first) {
+            first++;
+        }
+        out.clear();
+        out.put(NetProtocol.INPUT);
+        NetProtocol.putVarInt(out, (int) (latestSequence + 1));
+        NetProtocol.putVarInt(out, (int) first);
+        out.put((byte) (tick - first + 1));
+        for (long t = first; t <= tick; t++) {
+            int s = (int) (t % NetProtocol.INPUT_REDUNDANCY);
+            out.put(inputTicks[s] == t ? inputDirections[s] : (byte) direction);
+        }
+        out.flip();
+        channel.write(out);
+    }
+
+    // A simple bot for testing: head for the nearest paddle below the player
+    public static int chase(GameClient client) {
+        int playerX = client.getPlayerX() + Player.SIZE / 2;
+        int playerY = client.getPlayerY();
+        int target = -1;
+        int targetY = Integer.MAX_VALUE;
+        for (int i = 0; i < client.getPaddleCount(); i++) {
+            int y = client.getPaddleY(i);
+            if (y > playerY && y < targetY) {
+                targetY = y;
+                target = i;
+            }
+        }
+        if (target < 0) {
+            return 0;
+        }
+        int paddleX = client.getPaddleX(target) + client.getPaddleWidth(target) / 2;
+        return Integer.compare(paddleX, playerX);
+    }
+
+    private int field(int index) {
+        return index < latestLength ? latest[index] : 0;
+    }
+
+    // True once the first snapshot has arrived
+    public boolean hasSnapshot() {
+        return latestSequence >= 0;
+    }
+
+    // Tick of the newest snapshot
+    public long getTick() {
+        return latestTick;
+    }
+
+    public int getScore() {
+        return field(NetProtocol.SCORE);
+    }
+
+    public int getLevel() {
+        return field(NetProtocol.LEVEL);
+    }
+
+    public int getPlayerX() {
+        return field(NetProtocol.PLAYER_X);
+    }
+
+    public int getPlayerY() {
+        return field(NetProtocol.PLAYER_Y);
+    }
+
+    public boolean isGameOver() {
+        return field(NetProtocol.GAME_OVER) != 0;
+    }
+
+    // Best score among the other players
+    public int getLeaderScore() {
+        return field(NetProtocol.LEADER_SCORE);
+    }
+
+    public int getPaddleCount() {
+        return field(NetProtocol.PADDLE_COUNT);
+    }
+
+    public int getPaddleX(int index) {
+        return field(NetProtocol.HEADER_FIELDS + index * NetProtocol.PADDLE_FIELDS);
+    }
+
+    public int getPaddleY(int index) {
+        return field(NetProtocol.HEADER_FIELDS + index * NetProtocol.PADDLE_FIELDS + 1);
+    }
+
+    public int getPaddleWidth(int index) {
+        return field(NetProtocol.HEADER_FIELDS + index * NetProtocol.PADDLE_FIELDS + 2);
+    }
+
+    public int getPowerUpCount() {
+        return field(NetProtocol.POWER_UP_COUNT);
+    }
+
+    public int getPowerUpX(int index) {
+        return field(powerUpField(index));
+    }
+
+    public int getPowerUpY(int index) {
+        return field(powerUpField(index) + 1);
+    }
+
+    private int powerUpField(int index) {
+        return NetProtocol.HEADER_FIELDS + getPaddleCount() * NetProtocol.PADDLE_FIELDS
+                + index * NetProtocol.POWER_UP_FIELDS;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getSnapshotsReceived() {
+        return snapshotsReceived;
+    }
+}
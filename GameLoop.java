@@ -0,0 +1,155 @@
+import java.util.concurrent.locks.LockSupport;
+
+// The GameLoop class drives the game on its own thread. The world is advanced in
+// fixed simulation steps and rendered on a separate cadence with interpolation.
+public class GameLoop implements Runnable {
+    // Simulation rate in ticks per second. Speeds, gravity and jumps are in pixels per
+    // tick, so this sets how fast the game plays; it matches the 10 ms Swing timer the
+    // game was tuned on. Only the frame rate can be changed.
+    public static final int DEFAULT_TICK_RATE = 100;
+    public static final int DEFAULT_FRAME_RATE = 60;
+
+    // Maximum number of ticks run back to back before the backlog is dropped
+    private static final int MAX_CATCH_UP_TICKS = 5;
+
+    // Callbacks implemented by the game
+    public interface Game {
+        // Advance the world by exactly one fixed step
+        void tick();
+
+        // Draw the world, alpha is how far we are between the last two ticks (0..1)
+        void render(double alpha);
+    }
+
+    private final Game game;
+    private final int tickRate;
+    private final long tickNanos;
+    private final long frameNanos;
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile boolean paused;
+
+    // Statistics, written by the loop thread only: ticks that took longer than their
+    // slot, and ticks skipped to catch up after a stall
+    private volatile long overrunCount;
+    private volatile long droppedTickCount;
+
+    // Constructor, a frame rate of 0 renders once per loop iteration
+    public GameLoop(Game game, int tickRate, int frameRate) {
+        if (tickRate <= 0) {
+            throw new IllegalArgumentException("Tick rate must be positive: " + tickRate);
+        }
+        this.game = game;
+        this.tickRate = tickRate;
+        this.tickNanos = 1_000_000_000L / tickRate;
+        this.frameNanos = frameRate > 0 ? 1_000_000_000L / frameRate : 0;
+    }
+
+    // Start the loop on a new thread, does nothing if it is already running
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        paused = false;
+        thread = new Thread(this, "GameLoop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Ask the loop to stop, safe to call from the loop thread itself
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        long nextFrame = previous;
+
+        while (running) {
+            long now = System.nanoTime();
+            long elapsed = now - previous;
+            previous = now;
+
+            if (paused) {
+                // Time spent paused does not count towards the simulation
+                accumulator = 0;
+                LockSupport.parkNanos(this, tickNanos);
+                continue;
+            }
+
+            // Run as many fixed steps as the elapsed time allows
+            accumulator += elapsed;
+            int steps = 0;
+            while (accumulator >= tickNanos && running && !paused) {
+                long start = System.nanoTime();
+                game.tick();
+                long cost = System.nanoTime() - start;
+                if (cost > tickNanos) {
+                    overrunCount++;
+                }
+                accumulator -= tickNanos;
+
+                // Too far behind, drop the backlog instead of spiralling
+                if (++steps >= MAX_CATCH_UP_TICKS && accumulator >= tickNanos) {
+                    long dropped = accumulator / tickNanos;
+                    droppedTickCount += dropped;
+                    accumulator -= dropped * tickNanos;
+                }
+            }
+
+            // Render on our own cadence
+            if (now >= nextFrame) {
+                game.render((double) accumulator / tickNanos);
+                nextFrame = frameNanos > 0 ? Math.max(nextFrame + frameNanos, now) : now;
+            }
+
+            // Sleep until the next tick or frame is due
+            long nextTick = now + (tickNanos - accumulator);
+            long wake = frameNanos > 0 ? Math.min(nextTick, nextFrame) : nextTick;
+            long sleep = wake - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+            }
+        }
+    }
+
+    // Read the frame rate from the musicgame.frameRate system property
+    public static int configuredFrameRate() {
+        return Integer.getInteger("musicgame.frameRate", DEFAULT_FRAME_RATE);
+    }
+
+    // Getters for the loop statistics
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getDroppedTickCount() {
+        return droppedTickCount;
+    }
+}
@@ -0,0 +1,56 @@
+// The GameRandom class is a small seeded random number generator (SplitMix64) whose
+// whole state is one long. The world owns one stream per kind of thing it randomizes,
+// all derived from the session seed, so a session can be replayed exactly and its
+// random state saved and restored.
+public class GameRandom {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    // Constructor
+    public GameRandom(long seed) {
+        this.state = seed;
+    }
+
+    // Start this generator as the given stream of a session seed
+    public void seed(long seed, int stream) {
+        state = mix(seed + stream * GOLDEN_GAMMA);
+    }
+
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    // A random int from 0 (inclusive) to bound (exclusive)
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    // A random double from 0 (inclusive) to 1 (exclusive)
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    // The seed that follows the given one, used to start the next session
+    public static long nextSeed(long seed) {
+        return mix(seed + GOLDEN_GAMMA);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
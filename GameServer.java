@@ -0,0 +1,433 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// The GameServer class runs head-to-head games authoritatively. Every client that joins
+// plays its own world, all started from the server's seed so everyone gets the same
+// paddles, and sees the leading opponent's score. The server owns the worlds: clients
+// only send their direction for upcoming ticks, and every tick the server simulates all
+// worlds and sends each client a snapshot of its own, delta-compressed against the last
+// snapshot the client acknowledged (see NetProtocol). Everything runs on one thread over
+// a non-blocking UDP channel, and the work and bytes per client do not depend on how many
+// other clients there are.
+// Usage: java -Djava.awt.headless=true GameServer [port]
+//        java -Djava.awt.headless=true GameServer loopback [seconds per run]
+public class GameServer implements Runnable {
+    public static final int DEFAULT_PORT = 47800;
+
+    // Clients not heard from for this long are dropped
+    private static final long CLIENT_TIMEOUT_NANOS = 5_000_000_000L;
+    // Maximum number of ticks run back to back before the backlog is dropped
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    // Ticks of future input kept for every client
+    private static final int INPUT_BUFFER = 64;
+
+    // One connected player
+    private static final class Client implements World.Input {
+        private final SocketAddress address;
+        private final World world;
+
+        // Snapshots sent recently, by sequence number
+        private final int[][] history = new int[NetProtocol.HISTORY][];
+        private final int[] historyLength = new int[NetProtocol.HISTORY];
+        private final long[] historySequence = new long[NetProtocol.HISTORY];
+        private long sequence;
+        private long acked = -1;
+
+        // Directions the client asked for, by tick
+        private final long[] inputTicks = new long[INPUT_BUFFER];
+        private final byte[] inputDirections = new byte[INPUT_BUFFER];
+        private long newestInputTick = -1;
+        private int lastDirection;
+        private long lastHeardNanos;
+
+        Client(SocketAddress address, World world) {
+            this.address = address;
+            this.world = world;
+            Arrays.fill(historySequence, -1);
+            Arrays.fill(inputTicks, -1);
+            for (int i = 0; i < NetProtocol.HISTORY; i++) {
+                history[i] = new int[256];
+            }
+        }
+
+        // The direction sent for this tick, or the latest one if it has not arrived
+        @Override
+        public int direction(World world) {
+            long tick = world.getTick();
+            int slot = (int) (tick % INPUT_BUFFER);
+            return inputTicks[slot] == tick ? inputDirections[slot] : lastDirection;
+        }
+
+        // Forget the previous game's input and snapshots
+        void restart() {
+            world.reset();
+            Arrays.fill(inputTicks, -1);
+            newestInputTick = -1;
+            lastDirection = 0;
+        }
+    }
+
+    private final InetSocketAddress bindAddress;
+    private final int tickRate;
+    private final long tickNanos;
+    private final long seed;
+
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+
+    private final HashMap<SocketAddress, Client> clients = new HashMap<>();
+    private final ArrayList<Client> clientList = new ArrayList<>();
+    private final ByteBuffer in = ByteBuffer.allocateDirect(NetProtocol.MAX_PACKET_BYTES);
+    private final ByteBuffer out = ByteBuffer.allocateDirect(NetProtocol.MAX_PACKET_BYTES);
+
+    // Statistics, written by the server thread only
+    private volatile long tickCount;
+    private volatile long tickNanosTotal;
+    private volatile long clientTickCount;
+    private volatile long bytesSent;
+    private volatile long snapshotsSent;
+    private volatile long fullSnapshotsSent;
+    private volatile long droppedTickCount;
+    private volatile int clientCount;
+
+    // Constructor, port 0 picks a free port
+    public GameServer(InetSocketAddress bindAddress, int tickRate, long seed) {
+        this.bindAddress = bindAddress;
+        this.tickRate = tickRate;
+        this.tickNanos = 1_000_000_000L / tickRate;
+        this.seed = seed;
+    }
+
+    // Open the channel and start serving on a new thread
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.bind(bindAddress);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+        running = true;
+        thread = new Thread(this, "GameServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Stop serving and close the channel
+    public synchronized void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            selector.wakeup();
+            thread.join();
+            thread = null;
+        }
+    }
+
+    // Address the server is listening on
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    public void run() {
+        try {
+            long previous = System.nanoTime();
+            long accumulator = 0;
+            while (running) {
+                receive();
+
+                long now = System.nanoTime();
+                accumulator += now - previous;
+                previous = now;
+                int steps = 0;
+                while (accumulator >= tickNanos && running) {
+                    tick();
+                    accumulator -= tickNanos;
+
+                    // Too far behind, drop the backlog instead of spiralling
+                    if (++steps >= MAX_CATCH_UP_TICKS && accumulator >= tickNanos) {
+                        long dropped = accumulator / tickNanos;
+                        droppedTickCount += dropped;
+                        accumulator -= dropped * tickNanos;
+                    }
+                }
+
+                // Wait for a packet or the next tick
+                long waitMillis = (tickNanos - accumulator) / 1_000_000L;
+                if (waitMillis > 0) {
+                    selector.select(waitMillis);
+                } else {
+                    selector.selectNow();
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                selector.close();
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Read every packet waiting on the channel
+    private void receive() throws IOException {
+        SocketAddress from;
+        while (true) {
+            in.clear();
+            from = channel.receive(in);
+            if (from == null) {
+                return;
+            }
+            in.flip();
+            try {
+                handle(from);
+            } catch (RuntimeException e) {
+                // A malformed packet only affects its sender
+                System.err.println("GameServer: bad packet from " + from + ": " + e);
+            }
+        }
+    }
+
+    private void handle(SocketAddress from) throws IOException {
+        byte type = in.get();
+        Client client = clients.get(from);
+        if (type == NetProtocol.JOIN) {
+            if (in.getInt() != NetProtocol.VERSION) {
+                return;
+            }
+            if (client == null) {
+                client = new Client(from, new World(tickRate, seed));
+                clients.put(from, client);
+                clientList.add(client);
+                clientCount = clientList.size();
+            } else {
+                client.restart();
+            }
+            client.lastHeardNanos = System.nanoTime();
+            out.clear();
+            out.put(NetProtocol.WELCOME).putInt(tickRate).putLong(seed);
+            out.flip();
+            bytesSent += out.remaining();
+            channel.send(out, from);
+            return;
+        }
+        if (client == null) {
+            return;
+        }
+        client.lastHeardNanos = System.nanoTime();
+        if (type == NetProtocol.LEAVE) {
+            remove(client);
+        } else if (type == NetProtocol.INPUT) {
+            long acked = NetProtocol.getVarInt(in) - 1L;
+            if (acked > client.acked && acked < client.sequence) {
+                client.acked = acked;
+            }
+            long firstTick = NetProtocol.getVarInt(in);
+            int count = in.get();
+            long next = client.world.getTick();
+            for (int i = 0; i < count; i++) {
+                long tick = firstTick + i;
+                byte direction = in.get();
+                // Too far ahead to buffer, most likely a late packet from before a rejoin
+                // restarted the world; it must not become the fallback direction
+                if (tick >= next + INPUT_BUFFER) {
+                    continue;
+                }
+                if (tick >= next) {
+                    int slot = (int) (tick % INPUT_BUFFER);
+                    client.inputTicks[slot] = tick;
+                    client.inputDirections[slot] = direction;
+                }
+                if (tick > client.newestInputTick) {
+                    client.newestInputTick = tick;
+                    client.lastDirection = direction;
+                }
+            }
+        }
+    }
+
+    private void remove(Client client) {
+        clients.remove(client.address);
+        clientList.remove(client);
+        clientCount = clientList.size();
+    }
+
+    // Simulate one tick of every world and send the snapshots
+    private void tick() throws IOException {
+        long start = System.nanoTime();
+
+        // Best two scores, so every client can be shown the best of the others
+        Client leader = null;
+        int best = 0;
+        int second = 0;
+        for (int i = clientList.size() - 1; i >= 0; i--) {
+            Client client = clientList.get(i);
+            if (start - client.lastHeardNanos > CLIENT_TIMEOUT_NANOS) {
+                remove(client);
+                continue;
+            }
+            client.world.advance(1, client);
+            int score = client.world.getScore();
+            if (leader == null || score > best) {
+                second = best;
+                best = score;
+                leader = client;
+            } else if (score > second) {
+                second = score;
+            }
+        }
+
+        for (int i = 0; i < clientList.size(); i++) {
+            Client client = clientList.get(i);
+            sendSnapshot(client, client == leader ? second : best);
+        }
+
+        tickCount++;
+        clientTickCount += clientList.size();
+        tickNanosTotal += System.nanoTime() - start;
+    }
+
+    private void sendSnapshot(Client client, int leaderScore) throws IOException {
+        World world = client.world;
+        long sequence = client.sequence++;
+        int slot = (int) (sequence % NetProtocol.HISTORY);
+        int needed = NetProtocol.fieldCount(world);
+        if (client.history[slot].length < needed) {
+            client.history[slot] = new int[Math.max(needed, client.history[slot].length * 2)];
+        }
+        int[] fields = client.history[slot];
+        int length = NetProtocol.capture(world, leaderScore, fields);
+        client.historyLength[slot] = length;
+        client.historySequence[slot] = sequence;
+
+        // Delta against the last snapshot the client confirmed, if it is still remembered
+        long base = client.acked;
+        int baseSlot = (int) (base % NetProtocol.HISTORY);
+        if (base < 0 || sequence - base >= NetProtocol.HISTORY || client.historySequence[baseSlot] != base) {
+            base = -1;
+            fullSnapshotsSent++;
+        }
+
+        out.clear();
+        out.put(NetProtocol.SNAPSHOT);
+        NetProtocol.putVarInt(out, (int) sequence);
+        NetProtocol.putVarInt(out, (int) (base + 1));
+        NetProtocol.putVarInt(out, (int) world.getTick());
+        if (base >= 0) {
+            NetProtocol.writeDelta(out, client.history[baseSlot], client.historyLength[baseSlot], fields, length);
+        } else {
+            NetProtocol.writeDelta(out, fields, 0, fields, length);
+        }
+        out.flip();
+        bytesSent += out.remaining();
+        snapshotsSent++;
+        channel.send(out, client.address);
+    }
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    // Average time to simulate and send one client's tick
+    public double getAverageClientTickNanos() {
+        return clientTickCount == 0 ? 0 : (double) tickNanosTotal / clientTickCount;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getSnapshotsSent() {
+        return snapshotsSent;
+    }
+
+    public long getFullSnapshotsSent() {
+        return fullSnapshotsSent;
+    }
+
+    public long getDroppedTickCount() {
+        return droppedTickCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int tickRate = GameLoop.DEFAULT_TICK_RATE;
+        if (args.length > 0 && args[0].equals("loopback")) {
+            int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+            for (int clients : new int[] {1, 8, 32, 128}) {
+                loopbackRun(clients, seconds, tickRate);
+            }
+            return;
+        }
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        GameServer server = new GameServer(new InetSocketAddress(port), tickRate, System.nanoTime());
+        server.start();
+        System.out.println("Serving on " + server.getLocalAddress());
+        while (true) {
+            Thread.sleep(10_000);
+            System.out.printf("%d clients, %.1f us per client tick, %d bytes sent%n",
+                    server.getClientCount(), server.getAverageClientTickNanos() / 1000, server.getBytesSent());
+        }
+    }
+
+    // Serve bot clients over loopback for a while and report the cost per client
+    private static void loopbackRun(int count, int seconds, int tickRate) throws Exception {
+        GameServer server = new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                tickRate, 42);
+        server.start();
+        GameClient[] clients = new GameClient[count];
+        for (int i = 0; i < count; i++) {
+            clients[i] = new GameClient(server.getLocalAddress());
+            clients[i].join();
+        }
+
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < end) {
+            for (GameClient client : clients) {
+                if (client.poll()) {
+                    client.sendInput(GameClient.chase(client));
+                }
+                if (client.isGameOver()) {
+                    client.join();
+                }
+            }
+            Thread.sleep(1);
+        }
+
+        long received = 0;
+        long snapshots = 0;
+        for (GameClient client : clients) {
+            received += client.getBytesReceived();
+            snapshots += client.getSnapshotsReceived();
+            client.close();
+        }
+        server.stop();
+        System.out.printf("%3d clients: %6.2f us server time and %5.1f bytes per client tick, "
+                + "%.1f%% full snapshots, %d of %d snapshots received, %d ticks dropped%n",
+                count, server.getAverageClientTickNanos() / 1000,
+                (double) server.getBytesSent() / Math.max(1, server.getSnapshotsSent()),
+                100.0 * server.getFullSnapshotsSent() / Math.max(1, server.getSnapshotsSent()),
+                snapshots, server.getSnapshotsSent(), server.getDroppedTickCount());
+    }
+}
@@ -0,0 +1,73 @@
+// The HeadlessGame class runs the simulation without a window or a sound device. It plays
+// the same level table and song as the windowed game (-Dmusicgame.levels, -Dmusicgame.chart).
+// Usage: java -Djava.awt.headless=true HeadlessGame [sessions] [maxTicks] [tickRate]
+public class HeadlessGame {
+    // Defaults for the command line
+    private static final int DEFAULT_SESSIONS = 1000;
+    private static final int DEFAULT_MAX_TICKS = 20_000;
+
+    // A simple bot that steers towards the nearest paddle below the player
+    public static final World.Input BOT = world -> {
+        Player player = world.getPlayer();
+        int playerCenter = player.getX() + Player.SIZE / 2;
+        Paddle target = null;
+        for (Paddle paddle : world.getPaddleList()) {
+            if (paddle.getY() > player.getY()
+                    && (target == null || paddle.getY() < target.getY())) {
+                target = paddle;
+            }
+        }
+        if (target == null) {
+            return 0;
+        }
+        int paddleCenter = target.getX() + target.getPWidth() / 2;
+        if (paddleCenter < playerCenter - Player.SIZE / 2) {
+            return -1;
+        } else if (paddleCenter > playerCenter + Player.SIZE / 2) {
+            return 1;
+        }
+        return 0;
+    };
+
+    // Play one session to game over or until maxTicks, returns the final world.
+    // The chart may be null, paddles then spawn at random like the game without a song.
+    public static World play(int tickRate, int maxTicks, Difficulty difficulty, Chart chart, World.Input input) {
+        World world = new World(tickRate, System.nanoTime(), difficulty);
+        if (chart != null) {
+            world.setChart(chart);
+        }
+        world.advance(maxTicks, input);
+        return world;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        int maxTicks = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_TICKS;
+        int tickRate = args.length > 2 ? Integer.parseInt(args[2]) : GameLoop.DEFAULT_TICK_RATE;
+
+        Difficulty difficulty = Difficulty.loadConfigured();
+        Chart chart = ChartLoader.loadConfigured();
+        System.out.println("chart: " + (chart != null ? chart.getName() : "none"));
+
+        long totalTicks = 0;
+        long totalScore = 0;
+        int bestScore = 0;
+        int leaks = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            World world = play(tickRate, maxTicks, difficulty, chart, BOT);
+            totalTicks += world.getTick();
+            totalScore += world.getScore();
+            bestScore = Math.max(bestScore, world.getScore());
+            leaks += world.getLeakedPaddles() + world.getLeakedPowerUps();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d sessions, %d ticks in %.2f s (%.0f sessions/s, %.0f ticks/s)%n",
+                sessions, totalTicks, seconds, sessions / seconds, totalTicks / seconds);
+        System.out.printf("average score %.1f, best score %d%n",
+                (double) totalScore / sessions, bestScore);
+        System.out.printf("pooled entities not accounted for: %d%n", leaks);
+    }
+}
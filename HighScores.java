@@ -0,0 +1,348 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+// The HighScores class is the local leaderboard. Every finished run is appended to a log
+// file as a fixed-size record with a checksum, so the full history is kept and a record
+// torn by a crash is recognised and dropped. The best runs are also kept in a small index
+// file that is mapped into memory: opening the leaderboard reads the index and only the
+// log records written after it, never the whole history, and reading the top list is an
+// array copy. Runs are handed to a writer thread, which appends whatever has queued up in
+// one write and one sync, so the game over screen never waits for the disk.
+public class HighScores implements Closeable {
+    // Runs kept in the index
+    public static final int TOP_COUNT = 100;
+
+    // Log layout: header, then one record per run
+    private static final int LOG_MAGIC = 0x4D47484C; // "MGHL"
+    private static final int INDEX_MAGIC = 0x4D474849; // "MGHI"
+    private static final int VERSION = 1;
+    private static final int LOG_HEADER_BYTES = 16;
+    // Record: time, seed, ticks, score, checksum of the first 28 bytes
+    private static final int RECORD_BYTES = 32;
+    // Index layout: magic, version, count, log bytes covered, checksum of the entries, then the records
+    private static final int INDEX_HEADER_BYTES = 24;
+
+    // Most runs written in one batch
+    private static final int MAX_BATCH = 256;
+
+    // One finished run
+    public static final class Entry {
+        private final long timeMillis;
+        private final long seed;
+        private final long ticks;
+        private final int score;
+
+        public Entry(long timeMillis, long seed, long ticks, int score) {
+            this.timeMillis = timeMillis;
+            this.seed = seed;
+            this.ticks = ticks;
+            this.score = score;
+        }
+
+        // When the run ended
+        public long getTimeMillis() {
+            return timeMillis;
+        }
+
+        // Seed of the run, for watching it again with the same paddles
+        public long getSeed() {
+            return seed;
+        }
+
+        // How long the run lasted, in ticks
+        public long getTicks() {
+            return ticks;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        // Higher scores first, then longer runs, then earlier runs
+        private boolean beats(Entry other) {
+            if (score != other.score) {
+                return score > other.score;
+            }
+            if (ticks != other.ticks) {
+                return ticks > other.ticks;
+            }
+            return timeMillis < other.timeMillis;
+        }
+    }
+
+    private final FileChannel log;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer index;
+    private final ByteBuffer batchBuffer = ByteBuffer.allocateDirect(MAX_BATCH * RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+
+    // Best runs, best first, replaced as a whole after every batch
+    private volatile Entry[] top;
+
+    // Runs waiting for the writer thread
+    private final LinkedBlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    // End of the log, used by the writer thread
+    private long written;
+    // Runs submitted and runs written so far, guarded by this
+    private long submitted;
+    private long writtenRuns;
+
+    // Constructor, opens or creates the log and the index and starts the writer thread
+    public HighScores(Path logFile, Path indexFile) throws IOException {
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_BYTES + TOP_COUNT * RECORD_BYTES);
+        long logEnd = openLog();
+        top = catchUp(logEnd);
+
+        writer = new Thread(this::writeLoop, "HighScores");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Check the log header and cut off a record torn by a crash, returns where records end
+    private long openLog() throws IOException {
+        long size = log.size();
+        if (size < LOG_HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            header.putInt(LOG_MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+            log.truncate(0);
+            log.write(header, 0);
+            log.force(true);
+            return LOG_HEADER_BYTES;
+        }
+        ByteBuffer header = ByteBuffer.allocate(8);
+        log.read(header, 0);
+        header.flip();
+        if (header.getInt() != LOG_MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Not a high score log");
+        }
+        long end = size - (size - LOG_HEADER_BYTES) % RECORD_BYTES;
+        if (end != size) {
+            log.truncate(end);
+        }
+        return end;
+    }
+
+    // Read the index, and the log records written after it; rebuild it from the whole log if it is damaged
+    private Entry[] catchUp(long logEnd) throws IOException {
+        ArrayList<Entry> best = new ArrayList<>();
+        long covered = LOG_HEADER_BYTES;
+        index.clear();
+        if (index.getInt(0) == INDEX_MAGIC && index.getInt(4) == VERSION) {
+            int count = index.getInt(8);
+            long indexCovered = index.getLong(12);
+            if (count >= 0 && count <= TOP_COUNT && indexCovered >= LOG_HEADER_BYTES && indexCovered <= logEnd
+                    && index.getInt(20) == checksum(index, INDEX_HEADER_BYTES, count * RECORD_BYTES)) {
+                for (int i = 0; i < count; i++) {
+                    Entry entry = readRecord(index, INDEX_HEADER_BYTES + i * RECORD_BYTES);
+                    if (entry != null) {
+                        best.add(entry);
+                    }
+                }
+                covered = indexCovered;
+            }
+        }
+
+        // Records the index has not seen, read in batches
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_BATCH * RECORD_BYTES);
+        for (long position = covered; position < logEnd; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), logEnd - position));
+            int read = log.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            buffer.flip();
+            for (int offset = 0; offset + RECORD_BYTES <= buffer.limit(); offset += RECORD_BYTES) {
+                Entry entry = readRecord(buffer, offset);
+                if (entry != null) {
+                    insert(best, entry);
+                }
+            }
+            position += read - read % RECORD_BYTES;
+        }
+        written = logEnd;
+        Entry[] entries = best.toArray(new Entry[0]);
+        writeIndex(entries, logEnd);
+        return entries;
+    }
+
+    // Hand a finished run to the writer thread, returns at once
+    public void submit(int score, long ticks, long seed) {
+        if (closed) {
+            throw new IllegalStateException("High scores are closed");
+        }
+        synchronized (this) {
+            submitted++;
+        }
+        queue.add(new Entry(System.currentTimeMillis(), seed, ticks, score));
+    }
+
+    // The best runs, best first; runs still waiting to be written are not included yet
+    public Entry[] getTop() {
+        return top.clone();
+    }
+
+    // Place a score would take on the leaderboard (1 is first), or 0 if it would not make it
+    public int rankOf(int score) {
+        Entry[] entries = top;
+        int rank = 1;
+        while (rank <= entries.length && entries[rank - 1].score >= score) {
+            rank++;
+        }
+        return rank <= TOP_COUNT ? rank : 0;
+    }
+
+    // Wait until every run submitted so far is on disk
+    public synchronized void flush() throws InterruptedException {
+        long target = submitted;
+        while (writtenRuns < target && writer.isAlive()) {
+            wait(100);
+        }
+    }
+
+    // Write what is queued and stop the writer thread
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        indexChannel.close();
+    }
+
+    private void writeLoop() {
+        ArrayList<Entry> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            try {
+                writeBatch(batch);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            synchronized (this) {
+                writtenRuns += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    // Append the runs to the log in one write and one sync, then update the index
+    private void writeBatch(ArrayList<Entry> batch) throws IOException {
+        batchBuffer.clear();
+        ArrayList<Entry> best = new ArrayList<>(Arrays.asList(top));
+        for (Entry entry : batch) {
+            writeRecord(batchBuffer, entry);
+            insert(best, entry);
+        }
+        batchBuffer.flip();
+        while (batchBuffer.hasRemaining()) {
+            written += log.write(batchBuffer, written);
+        }
+        log.force(false);
+
+        Entry[] entries = best.toArray(new Entry[0]);
+        writeIndex(entries, written);
+        top = entries;
+    }
+
+    // Keep the list sorted best first and no longer than TOP_COUNT
+    private static void insert(ArrayList<Entry> best, Entry entry) {
+        int position = best.size();
+        while (position > 0 && entry.beats(best.get(position - 1))) {
+            position--;
+        }
+        if (position < TOP_COUNT) {
+            best.add(position, entry);
+            if (best.size() > TOP_COUNT) {
+                best.remove(best.size() - 1);
+            }
+        }
+    }
+
+    // Rewrite the mapped index, the header last so a half-written index fails its checksum
+    private void writeIndex(Entry[] entries, long covered) {
+        index.putInt(0, 0);
+        for (int i = 0; i < entries.length; i++) {
+            index.position(INDEX_HEADER_BYTES + i * RECORD_BYTES);
+            writeRecord(index, entries[i]);
+        }
+        index.putInt(20, checksum(index, INDEX_HEADER_BYTES, entries.length * RECORD_BYTES));
+        index.putInt(8, entries.length);
+        index.putLong(12, covered);
+        index.putInt(4, VERSION);
+        index.putInt(0, INDEX_MAGIC);
+        index.force();
+    }
+
+    private void writeRecord(ByteBuffer out, Entry entry) {
+        int start = out.position();
+        out.putLong(entry.timeMillis).putLong(entry.seed).putLong(entry.ticks).putInt(entry.score);
+        out.putInt(checksum(out, start, RECORD_BYTES - 4));
+    }
+
+    // A record at the given offset, or null if its checksum does not match
+    private Entry readRecord(ByteBuffer in, int offset) {
+        if (in.getInt(offset + RECORD_BYTES - 4) != checksum(in, offset, RECORD_BYTES - 4)) {
+            return null;
+        }
+        return new Entry(in.getLong(offset), in.getLong(offset + 8), in.getLong(offset + 16), in.getInt(offset + 24));
+    }
+
+    private int checksum(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        crc.reset();
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+
+    // Print the leaderboard
+    // Usage: java HighScores [log file] [index file]
+    public static void main(String[] args) throws IOException {
+        Path logFile = Paths.get(args.length > 0 ? args[0] : "scores.log");
+        Path indexFile = Paths.get(args.length > 1 ? args[1] : "scores.top");
+        if (!Files.exists(logFile)) {
+            System.out.println("No high scores yet");
+            return;
+        }
+        try (HighScores scores = new HighScores(logFile, indexFile)) {
+            Entry[] entries = scores.getTop();
+            for (int i = 0; i < entries.length; i++) {
+                System.out.printf("%3d. %6d  %s%n", i + 1, entries[i].getScore(),
+                        new Date(entries[i].getTimeMillis()));
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// The InputQueue class carries key presses from the AWT thread to the simulation.
+// Key events are stamped with System.nanoTime() and queued in a lock-free ring buffer;
+// the game loop drains the queue once per tick, before the step, so every tick sees the
+// same input no matter when the events arrived. A press and release that both land
+// inside one tick still move the player for that tick instead of being lost.
+// The time from key event to the tick that applied it, and to the frame that showed
+// it, is recorded in the performance monitor.
+public class InputQueue implements World.Input {
+    // Keys the game cares about, as the direction they move the player
+    public static final int LEFT = -1;
+    public static final int RIGHT = 1;
+
+    // Size of the ring buffer, must be a power of two
+    private static final int CAPACITY = 256;
+    private static final int MASK = CAPACITY - 1;
+
+    // Multi-producer ring buffer: producers claim slots with a CAS on tail and
+    // publish them through the slot's sequence number
+    private final long[] ringTimes = new long[CAPACITY];
+    private final int[] ringEvents = new int[CAPACITY];
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    // Key state, owned by the game loop thread
+    private boolean leftHeld;
+    private boolean rightHeld;
+    private int lastPressed;
+
+    // Timestamps of inputs that were simulated but not yet shown on screen
+    private final long[] unpresented = new long[CAPACITY];
+    private int unpresentedCount;
+
+    private PerfMonitor perf;
+    private final AtomicLong droppedCount = new AtomicLong();
+    private long appliedCount;
+
+    // Constructor
+    public InputQueue() {
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public void setPerfMonitor(PerfMonitor perf) {
+        this.perf = perf;
+    }
+
+    // Queue a key press or release, safe to call from any thread. Returns false if the queue is full.
+    public boolean offer(int key, boolean pressed, long nanos) {
+        int event = (key == LEFT ? 0 : 2) | (pressed ? 1 : 0);
+        long position = tail.get();
+        while (true) {
+            int slot = (int) (position & MASK);
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    ringTimes[slot] = nanos;
+                    ringEvents[slot] = event;
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                droppedCount.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    // Apply every queued event and return the direction for this tick, called once per tick
+    @Override
+    public int direction(World world) {
+        long now = System.nanoTime();
+        int tapped = 0;
+        while (true) {
+            int slot = (int) (head & MASK);
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+            long time = ringTimes[slot];
+            int event = ringEvents[slot];
+            sequences.set(slot, head + CAPACITY);
+            head++;
+
+            int key = (event & 2) == 0 ? LEFT : RIGHT;
+            boolean pressed = (event & 1) != 0;
+            if (key == LEFT) {
+                leftHeld = pressed;
+            } else {
+                rightHeld = pressed;
+            }
+            if (pressed) {
+                lastPressed = key;
+                tapped = key;
+            }
+
+            appliedCount++;
+            if (perf != null) {
+                perf.recordInputToSim(now - time);
+            }
+            if (unpresentedCount < CAPACITY) {
+                unpresented[unpresentedCount++] = time;
+            }
+        }
+
+        // The most recent of the held keys wins
+        if (leftHeld && rightHeld) {
+            return lastPressed;
+        } else if (leftHeld) {
+            return LEFT;
+        } else if (rightHeld) {
+            return RIGHT;
+        }
+        // A key that was pressed and released within this tick still counts once
+        return tapped;
+    }
+
+    // Note that a frame showing everything simulated so far reached the screen
+    public void presented(long nanos) {
+        if (perf != null) {
+            for (int i = 0; i < unpresentedCount; i++) {
+                perf.recordInputToPresent(nanos - unpresented[i]);
+            }
+        }
+        unpresentedCount = 0;
+    }
+
+    // Forget held keys, for example after a restart
+    public void releaseAll() {
+        leftHeld = false;
+        rightHeld = false;
+        lastPressed = 0;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getAppliedCount() {
+        return appliedCount;
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// The InputRecorder class sits between an input source and the world and remembers the
+// direction used on every tick. Only changes are kept, as the number of ticks since the
+// previous change, so a whole session usually fits in a few hundred bytes. Together
+// with the session seed this is enough for Replay to play the session again exactly.
+// A new recording starts whenever the world is back at tick 0. A game continued from a
+// saved one is recorded from the restored state, which is kept with the recording.
+public class InputRecorder implements World.Input {
+    // File layout: magic, version, tick rate, seed, chart, level table, start tick,
+    // start state (empty when starting from the seed), changes, final tick and score
+    static final int MAGIC = 0x4D475250; // "MGRP"
+    static final int VERSION = 4;
+
+    private final World.Input source;
+
+    // Direction changes of the current session, stored as parallel arrays
+    private int[] changeTicks = new int[256];
+    private int[] changeDirections = new int[256];
+    private int changeCount;
+    private int lastDirection;
+    private long lastChangeTick;
+    private long seed;
+    private int tickRate;
+    private String chartName = "";
+    private String levelsName = "";
+
+    // Where the recording starts, and the saved state it starts from if not tick 0
+    private long startTick;
+    private byte[] startState = new byte[0];
+    private final WorldSnapshot snapshot = new WorldSnapshot();
+
+    // Constructor
+    public InputRecorder(World.Input source) {
+        this.source = source;
+    }
+
+    @Override
+    public int direction(World world) {
+        long tick = world.getTick();
+        if (tick == 0) {
+            begin(world);
+        }
+        int direction = source.direction(world);
+        if (direction != lastDirection) {
+            if (changeCount == changeTicks.length) {
+                changeTicks = Arrays.copyOf(changeTicks, changeCount * 2);
+                changeDirections = Arrays.copyOf(changeDirections, changeCount * 2);
+            }
+            changeTicks[changeCount] = (int) (tick - lastChangeTick);
+            changeDirections[changeCount] = direction;
+            changeCount++;
+            lastDirection = direction;
+            lastChangeTick = tick;
+        }
+        return direction;
+    }
+
+    // Start recording a world that was just restored from a saved game
+    public void resume(World world) {
+        begin(world);
+        if (startTick > 0) {
+            ByteBuffer state = snapshot.capture(world);
+            startState = new byte[state.remaining()];
+            state.get(startState);
+        }
+    }
+
+    // Forget the previous session and start recording the world's current one
+    private void begin(World world) {
+        changeCount = 0;
+        lastDirection = 0;
+        startTick = world.getTick();
+        lastChangeTick = startTick;
+        startState = new byte[0];
+        seed = world.getSeed();
+        tickRate = world.getTickRate();
+        chartName = world.getChart() != null ? world.getChart().getName() : "";
+        levelsName = world.getDifficulty().getSource();
+    }
+
+    // Write the recording, ending at the world's current tick and score
+    public void save(Path file, World world) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(out, world.getTick(), world.getScore());
+        }
+    }
+
+    // Write the recording to a stream
+    public void write(OutputStream stream, long finalTick, int finalScore) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeVarLong(out, tickRate);
+        out.writeLong(seed);
+        out.writeUTF(chartName);
+        out.writeUTF(levelsName);
+        writeVarLong(out, startTick);
+        writeVarLong(out, startState.length);
+        out.write(startState);
+        writeVarLong(out, changeCount);
+        for (int i = 0; i < changeCount; i++) {
+            writeVarLong(out, changeTicks[i]);
+            out.writeByte(changeDirections[i]);
+        }
+        writeVarLong(out, finalTick);
+        writeVarLong(out, finalScore);
+        out.flush();
+    }
+
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    // Write a non-negative number 7 bits at a time, small numbers take one byte
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -0,0 +1,81 @@
+import java.nio.ByteBuffer;
+import java.util.PriorityQueue;
+import java.util.function.LongSupplier;
+
+// The LatencyLoopback class connects two RollbackSessions in the same process as if they
+// were on a real network: every packet arrives after a fixed latency plus a random
+// jitter, may arrive out of order, and may be lost. Time comes from the given clock, so a
+// test can run many seconds of play instantly with a clock it moves by hand.
+public class LatencyLoopback implements RollbackSession.Transport {
+    // A packet on its way
+    private static final class InFlight implements Comparable<InFlight> {
+        final long deliverAt;
+        final long order;
+        final byte[] data;
+
+        InFlight(long deliverAt, long order, byte[] data) {
+            this.deliverAt = deliverAt;
+            this.order = order;
+            this.data = data;
+        }
+
+        @Override
+        public int compareTo(InFlight other) {
+            return deliverAt != other.deliverAt ? Long.compare(deliverAt, other.deliverAt)
+                    : Long.compare(order, other.order);
+        }
+    }
+
+    private final LongSupplier clock;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final double lossRate;
+    private final GameRandom random;
+    private final PriorityQueue<InFlight> incoming = new PriorityQueue<>();
+    private LatencyLoopback peer;
+    private long sent;
+
+    private LatencyLoopback(LongSupplier clock, long latencyNanos, long jitterNanos, double lossRate, long seed) {
+        this.clock = clock;
+        this.latencyNanos = latencyNanos;
+        this.jitterNanos = jitterNanos;
+        this.lossRate = lossRate;
+        this.random = new GameRandom(seed);
+    }
+
+    // Two connected ends, each delaying what it sends by the latency plus up to the jitter
+    public static LatencyLoopback[] pair(LongSupplier clock, long latencyNanos, long jitterNanos,
+            double lossRate, long seed) {
+        LatencyLoopback a = new LatencyLoopback(clock, latencyNanos, jitterNanos, lossRate, seed);
+        LatencyLoopback b = new LatencyLoopback(clock, latencyNanos, jitterNanos, lossRate, GameRandom.nextSeed(seed));
+        a.peer = b;
+        b.peer = a;
+        return new LatencyLoopback[] {a, b};
+    }
+
+    @Override
+    public void send(ByteBuffer packet) {
+        if (random.nextDouble() < lossRate) {
+            return;
+        }
+        byte[] data = new byte[packet.remaining()];
+        packet.get(data);
+        long jitter = jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0;
+        synchronized (peer) {
+            peer.incoming.add(new InFlight(clock.getAsLong() + latencyNanos + jitter, sent++, data));
+        }
+    }
+
+    @Override
+    public synchronized boolean receive(ByteBuffer into) {
+        InFlight next = incoming.peek();
+        if (next == null || next.deliverAt > clock.getAsLong()) {
+            return false;
+        }
+        incoming.poll();
+        into.clear();
+        into.put(next.data);
+        into.flip();
+        return true;
+    }
+}
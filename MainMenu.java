@@ -19,6 +19,7 @@ public class MainMenu extends JFrame implements ActionListener {
 };
 
     private Sequencer sequencer;
+    private boolean closed = false;
 
     // Constructor
     public MainMenu() {
@@ -86,10 +87,17 @@ public class MainMenu extends JFrame implements ActionListener {
 
         setVisible(true);
 
-        // Start playing the theme song
+        // Start playing the theme song once the shared synth is warm
+        AudioService.ready().thenAccept(this::playThemeSong);
+    }
+
+    // Play the theme song through the shared synth
+    private synchronized void playThemeSong(AudioService audio) {
+        if (audio == null || audio.getSynthesizer() == null || closed) {
+            return;
+        }
         try {
-            sequencer = MidiSystem.getSequencer();
-            sequencer.open();
+            sequencer = audio.createSequencer();
             Sequence sequence = createSequence(notesRemix);
             sequencer.setSequence(sequence);
             sequencer.setLoopCount(Sequencer.LOOP_CONTINUOUSLY);
@@ -99,14 +107,21 @@ public class MainMenu extends JFrame implements ActionListener {
         }
     }
 
+    // Stop the theme song, the shared synth stays open for the game
+    private synchronized void stopThemeSong() {
+        closed = true;
+        if (sequencer != null) {
+            sequencer.stop();
+            sequencer.close();
+            sequencer = null;
+        }
+    }
+
     // Action performed method
     @Override
     public void actionPerformed(ActionEvent e) {
         // Stop the theme song
-        if (sequencer != null && sequencer.isRunning()) {
-            sequencer.stop();
-            sequencer.close();
-        }
+        stopThemeSong();
 
         SwingUtilities.invokeLater(new MusicGame());
         // Closes main menu window after starting game
@@ -146,6 +161,7 @@ public class MainMenu extends JFrame implements ActionListener {
 
     // Main method
     public static void main(String[] args) {
+        AudioService.warmUp();
         new MainMenu();
     }
 }
\ No newline at end of file
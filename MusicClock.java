@@ -0,0 +1,131 @@
+import javax.sound.midi.Synthesizer;
+
+// The MusicClock class ties game time to audio time. Every tick the game loop tells it
+// which tick it just simulated; the clock compares that with the audio position (the
+// synthesizer's microsecond position when it has one, System.nanoTime otherwise) and
+// slowly corrects its estimate of when each tick happens, so the two do not drift apart.
+// Large jumps, such as a pause or a long stall, make it start over from the current tick.
+// Notes are scheduled for the time of the tick that caused them, shifted by the display
+// delay and the synthesizer's output latency, so a burst of catch-up ticks after a frame
+// time spike still sounds evenly spaced and in step with the picture.
+public class MusicClock {
+    // Drift beyond this is a jump, not drift
+    private static final long RESYNC_NANOS = 50_000_000L;
+    // Each tick corrects this fraction of the measured drift
+    private static final int CORRECTION_DIVISOR = 16;
+
+    private final long tickNanos;
+    private volatile Synthesizer synth;
+    private Synthesizer followed;
+
+    // The tick the clock was last started from and when it happened
+    private long anchorTick = -1;
+    private long anchorNanos;
+    private long correctionNanos;
+
+    // Offset from the synthesizer's position to System.nanoTime
+    private long synthOffsetNanos;
+
+    // Compensation applied to every note
+    private volatile long displayDelayNanos;
+    private final long userOffsetNanos;
+
+    // Statistics
+    private volatile long lastDriftNanos;
+    private volatile long maxDriftNanos;
+    private volatile long resyncCount;
+
+    // Constructor
+    public MusicClock(int tickRate) {
+        this.tickNanos = 1_000_000_000L / tickRate;
+        this.userOffsetNanos = Long.getLong("musicgame.audioOffsetMs", 0) * 1_000_000L;
+    }
+
+    // Follow the synthesizer's clock from the next tick on, safe to call from any thread
+    public void setSynthesizer(Synthesizer synth) {
+        this.synth = synth;
+    }
+
+    // Time from simulating a tick to showing it, usually one frame
+    public void setDisplayDelayNanos(long nanos) {
+        this.displayDelayNanos = nanos;
+    }
+
+    // Measure and correct the drift, called once after every tick
+    public void update(long tick) {
+        if (followed != synth) {
+            followed = synth;
+            anchorTick = -1;
+        }
+        long now = now();
+        if (anchorTick < 0 || tick < anchorTick) {
+            anchor(tick, now);
+            return;
+        }
+        long drift = now - tickTime(tick);
+        lastDriftNanos = drift;
+        if (Math.abs(drift) > RESYNC_NANOS) {
+            resyncCount++;
+            anchor(tick, now);
+            return;
+        }
+        maxDriftNanos = Math.max(maxDriftNanos, Math.abs(drift));
+        correctionNanos += drift / CORRECTION_DIVISOR;
+    }
+
+    // System.nanoTime at which a note caused by the given tick should start
+    public long noteTime(long tick) {
+        if (anchorTick < 0) {
+            return System.nanoTime();
+        }
+        long latency = followed != null ? followed.getLatency() * 1000 : 0;
+        return toNanoTime(tickTime(tick)) + displayDelayNanos - latency + userOffsetNanos;
+    }
+
+    // When the given tick happens on the clock
+    private long tickTime(long tick) {
+        return anchorNanos + (tick - anchorTick) * tickNanos + correctionNanos;
+    }
+
+    private void anchor(long tick, long now) {
+        anchorTick = tick;
+        anchorNanos = now;
+        correctionNanos = 0;
+    }
+
+    // Current time on the clock, the synthesizer's position moved into System.nanoTime's range
+    private long now() {
+        long nanoTime = System.nanoTime();
+        if (followed == null) {
+            return nanoTime;
+        }
+        long position = followed.getMicrosecondPosition();
+        if (position < 0) {
+            return nanoTime;
+        }
+        if (anchorTick < 0) {
+            synthOffsetNanos = nanoTime - position * 1000;
+        }
+        return position * 1000 + synthOffsetNanos;
+    }
+
+    // Clock time to System.nanoTime, they only differ while following the synthesizer
+    private long toNanoTime(long clockNanos) {
+        if (followed == null) {
+            return clockNanos;
+        }
+        return System.nanoTime() + (clockNanos - now());
+    }
+
+    public long getLastDriftNanos() {
+        return lastDriftNanos;
+    }
+
+    public long getMaxDriftNanos() {
+        return maxDriftNanos;
+    }
+
+    public long getResyncCount() {
+        return resyncCount;
+    }
+}
@@ -3,48 +3,123 @@ import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.file.Files;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
-public class MusicGame implements Runnable {
+public class MusicGame implements Runnable, GameLoop.Game {
     // Constants
     private static final int FRAME_WIDTH = 800;
     private static final int FRAME_HEIGHT = 600;
-    private static final int TIMER_DELAY = 10;
+    // Game suspended when the window was closed, continued on the next start
+    private static final Path SAVE_FILE = Paths.get("musicgame.sav");
+    // Slot for F5 and F9
+    private static final Path QUICK_SAVE_FILE = Paths.get("musicgame-quick.sav");
+    private static final Path SCORE_LOG = Paths.get("scores.log");
+    private static final Path SCORE_INDEX = Paths.get("scores.top");
+    private static final int LEADERBOARD_LINES = 10;
 
     // Components
     private JFrame frame;
     private JLabel scores;
     private Background background;
-    private Timer gameTimer;
-    private boolean gamePaused = false;
-    private int lastPowerUpScore = 0;
-    private boolean powerUpExists = false;
+    private GameCanvas canvas;
+    private World world;
+    private GameLoop gameLoop;
+    private final PerfMonitor perf = new PerfMonitor();
+    private final InputQueue input = new InputQueue();
+    private final InputRecorder recorder = new InputRecorder(input);
+    private final WorldSnapshot snapshot = new WorldSnapshot();
+    private final PlayerSounds sounds = new PlayerSounds();
+    private final Particles particles = new Particles(World.WIDTH, World.HEIGHT,
+            Integer.getInteger("musicgame.particles", Particles.DEFAULT_CAPACITY));
+    private HighScores highScores;
+    private MusicClock musicClock;
+    private int shownScore = -1;
+    private long lastTitleUpdate = 0;
 
     @Override
     public void run() {
         // Setup frame and components
         frame = createFrame();
         scores = new JLabel();
-        background = new Background(scores);
-        Player player = background.getPlayer();
+        sounds.initialize();
+        int tickRate = GameLoop.DEFAULT_TICK_RATE;
+        world = new World(tickRate, System.nanoTime(), Difficulty.loadConfigured());
+        musicClock = new MusicClock(tickRate);
+        // Follow the MIDI synth's clock when it plays the notes, the soft synth keeps to System.nanoTime
+        AudioService.ready().thenAccept(service -> {
+            if (service != null && service.getSoftSynth() == null) {
+                musicClock.setSynthesizer(service.getSynthesizer());
+            }
+        });
+        world.setEvents(createEvents());
+        loadChart();
+        background = new Background(scores, world);
+        background.showLevel(world.getLevelSettings());
+        sounds.setLevel(world.getLevelSettings());
+        background.setPerfMonitor(perf);
+        background.setParticles(particles);
+        input.setPerfMonitor(perf);
+
+        openHighScores();
 
-        // Add key listener to frame
+        // Continue a game that was suspended when the window was closed
+        if (Files.exists(SAVE_FILE)) {
+            loadGame(SAVE_FILE);
+            deleteSuspendedGame();
+        }
+
+        // Add key listener to frame, and suspend the game when the window is closed
         addKeyListenerToFrame();
-        Paddle.firstPaddle(player);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (!world.isGameOver()) {
+                    saveGame(SAVE_FILE);
+                }
+                closeHighScores();
+            }
+        });
 
-        // Add components to frame
-        frame.add(background, BorderLayout.CENTER);
+        // Add components to frame, drawing actively on a canvas unless told otherwise
+        boolean active = !"swing".equals(System.getProperty("musicgame.renderer"));
+        boolean vsync = Boolean.parseBoolean(System.getProperty("musicgame.vsync", "true"));
+        if (active) {
+            canvas = new GameCanvas(background, vsync);
+            frame.add(canvas, BorderLayout.CENTER);
+        } else {
+            frame.add(background, BorderLayout.CENTER);
+        }
         frame.add(createMenu(), BorderLayout.NORTH);
 
-        // Start game timer
-        gameTimer = createGameTimer();
-        gameTimer.start();
-
         // Display frame
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
         frame.requestFocusInWindow();
+
+        // Fall back to Swing painting if the canvas cannot get a buffer strategy
+        int frameRate = GameLoop.configuredFrameRate();
+        if (canvas != null) {
+            if (canvas.createStrategy()) {
+                if (vsync && canvas.getRefreshRate() > 0) {
+                    frameRate = canvas.getRefreshRate();
+                }
+            } else {
+                frame.remove(canvas);
+                canvas = null;
+                frame.add(background, BorderLayout.CENTER);
+                frame.revalidate();
+            }
+        }
+
+        // Start the game loop, notes are timed for the frame that shows their tick
+        musicClock.setDisplayDelayNanos(1_000_000_000L / frameRate);
+        gameLoop = new GameLoop(this, tickRate, frameRate);
+        gameLoop.start();
     }
 
     private JFrame createFrame() {
@@ -59,18 +134,28 @@ public class MusicGame implements Runnable {
         frame.addKeyListener(new KeyAdapter() {
             @Override
             public void keyPressed(KeyEvent e) {
-                Player player = background.getPlayer();
+                // Movement keys are queued for the next tick instead of changing the player here
                 if (e.getKeyCode() == KeyEvent.VK_LEFT) {
-                    player.moveLeft();
+                    input.offer(InputQueue.LEFT, true, System.nanoTime());
                 } else if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
-                    player.moveRight();
+                    input.offer(InputQueue.RIGHT, true, System.nanoTime());
+                } else if (e.getKeyCode() == KeyEvent.VK_F3) {
+                    background.togglePerfOverlay();
+                } else if (e.getKeyCode() == KeyEvent.VK_F4) {
+                    dumpPerfCsv();
+                } else if (e.getKeyCode() == KeyEvent.VK_F5) {
+                    saveGame(QUICK_SAVE_FILE);
+                } else if (e.getKeyCode() == KeyEvent.VK_F9 && Files.exists(QUICK_SAVE_FILE)) {
+                    loadGame(QUICK_SAVE_FILE);
                 }
             }
 
             @Override
             public void keyReleased(KeyEvent e) {
-                if (e.getKeyCode() == KeyEvent.VK_LEFT || e.getKeyCode() == KeyEvent.VK_RIGHT) {
-                    background.getPlayer().stopMoving();
+                if (e.getKeyCode() == KeyEvent.VK_LEFT) {
+                    input.offer(InputQueue.LEFT, false, System.nanoTime());
+                } else if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
+                    input.offer(InputQueue.RIGHT, false, System.nanoTime());
                 }
             }
         });
@@ -93,94 +178,227 @@ public class MusicGame implements Runnable {
     }
 
     private void gamePause() {
-        background.pauseGame();
-        gameTimer.stop();
-        gamePaused = true;
+        gameLoop.pause();
     }
 
     private void gameResume() {
-        background.resumeGame();
-        gameTimer.start();
-        gamePaused = false;
-    }
-
-    private Timer createGameTimer() {
-        return new Timer(TIMER_DELAY, e -> {
-            Player player = background.getPlayer();
-            int score = player.getScore();
-            boolean gameJustStarted = score == 0;
-
-            if (!gamePaused) {
-                player.applyGravity();
-                player.move();
-
-                // Check collisions with paddles
-                for (Paddle paddle : background.getPaddleList()) {
-                    if (player.isCollidingWithPaddle(paddle)) {
-                        player.handleCollision();
-                    }
-                }
+        gameLoop.resume();
+    }
 
-                // Check if player is out of bounds
-                if (player.isOutOfBounds(frame.getHeight())) {
-                    handleGameOver(player);
-                }
+    // Play notes for the things that happen in the world, timed by the music clock,
+    // and throw sparks where they happen
+    private World.Events createEvents() {
+        return new World.Events() {
+            @Override
+            public void bounce(Player player) {
+                sounds.playNote(player, musicClock.noteTime(world.getTick()));
+                particles.bounce(player.getX() + Player.SIZE / 2f, player.getY() + Player.SIZE);
+            }
 
-                // Handle player going off screen
-                if (player.wentoffscreenLeft()) {
-                    player.setX(frame.getWidth());
-                }
-                if (player.wentoffscreenRight(frame.getWidth())) {
-                    player.setX(0);
-                }
-                
-                // When spawning a power-up
-                PowerUp powerUp = PowerUp.checkSpawn(score, gameJustStarted, powerUpExists);
-                if (powerUp != null) {
-                    powerUpExists = true;
-                    background.getPowerUps().add(powerUp); // Add the power-up to the game
-                }
+            @Override
+            public void powerUpCollected(Player player, PowerUp powerUp) {
+                sounds.playPowerUpSound(musicClock.noteTime(world.getTick()));
+                particles.pickup(powerUp.getX() + PowerUp.DIAMETER / 2f, powerUp.getY() + PowerUp.DIAMETER / 2f);
+            }
 
-                // Handle power-ups
-                ArrayList<PowerUp> powerUps = background.getPowerUps();
-                Iterator<PowerUp> iterator = powerUps.iterator();
-                while (iterator.hasNext()) {
-                    PowerUp currentPowerUp = iterator.next();
-                    if (currentPowerUp.isCollidingWithPlayer(player)) {
-                        player.addScore(15);
-                        player.speedUp();
-                        iterator.remove();
-                        Player.playPowerUpSound();
-                        powerUpExists = false; // Set powerUpExists to false when the power-up is collected
-                    }
-                    currentPowerUp.move();
+            @Override
+            public void levelChanged(int level, Difficulty.Level settings) {
+                sounds.setLevel(settings);
+                if (background != null) {
+                    background.showLevel(settings);
                 }
+            }
+        };
+    }
 
-                // Update game state based on player score
-                updateGameState(player);
+    // Advance the game by one fixed step, called from the game loop thread
+    @Override
+    public void tick() {
+        synchronized (background.getStateLock()) {
+            long start = System.nanoTime();
+            world.advance(1, recorder);
+            particles.step();
+            musicClock.update(world.getTick());
+            perf.recordTick(System.nanoTime() - start, world.getPaddleList().size(), world.getPowerUps().size());
+            perf.recordDrift(musicClock.getLastDriftNanos());
+            if (world.isGameOver()) {
+                gameLoop.stop();
+                Player player = world.getPlayer();
+                SwingUtilities.invokeLater(() -> handleGameOver(player));
+            }
+        }
+    }
+
+    // Draw the latest game state, called from the game loop thread
+    @Override
+    public void render(double alpha) {
+        int score = background.getPlayer().getScore();
+        if (score != shownScore) {
+            shownScore = score;
+            SwingUtilities.invokeLater(() -> scores.setText("Score " + score));
+        }
+        if (canvas != null) {
+            canvas.renderFrame(alpha);
+        } else {
+            background.setInterpolation(alpha);
+            background.repaint();
+        }
+        input.presented(System.nanoTime());
+        perf.recordDroppedTicks(gameLoop.getDroppedTickCount(), gameLoop.getOverrunCount());
+        perf.recordFrame();
+        updateTitle();
+    }
 
-                // Repaint background
-                background.repaint();
+    // Write the performance history next to the game
+    private void dumpPerfCsv() {
+        Path file = Paths.get("perf-" + System.currentTimeMillis() + ".csv");
+        try {
+            perf.dumpCsv(file);
+            System.out.println("Performance data written to " + file.toAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Play the song named by -Dmusicgame.chart, dsfbgma.mid by default, if it is there
+    private void loadChart() {
+        Chart chart = ChartLoader.loadConfigured();
+        if (chart != null) {
+            world.setChart(chart);
+            sounds.setChart(chart);
+        }
+    }
+
+    // Save the whole game so it can be continued later
+    private void saveGame(Path file) {
+        synchronized (background.getStateLock()) {
+            try {
+                snapshot.save(world, file);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-        });
+        }
+    }
+
+    // Continue a saved game, recording from where it was saved
+    private void loadGame(Path file) {
+        synchronized (background.getStateLock()) {
+            try {
+                snapshot.load(world, file);
+                recorder.resume(world);
+                input.releaseAll();
+                shownScore = -1;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // The suspended game is continued once only, whether it could be loaded or not
+    private void deleteSuspendedGame() {
+        try {
+            Files.deleteIfExists(SAVE_FILE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Save the finished session for Replay when -Dmusicgame.record=true
+    private void saveReplay() {
+        if (!Boolean.getBoolean("musicgame.record")) {
+            return;
+        }
+        Path file = Paths.get("replay-" + System.currentTimeMillis() + ".mgr");
+        try {
+            recorder.save(file, world);
+            System.out.println("Replay written to " + file.toAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Show the measured frame rate in the title bar once a second
+    private void updateTitle() {
+        long now = System.nanoTime();
+        if (now - lastTitleUpdate < 1_000_000_000L) {
+            return;
+        }
+        lastTitleUpdate = now;
+        double fps = canvas != null ? canvas.getFps() : background.getFps();
+        String title = String.format("Music Game - %.0f fps", fps);
+        SwingUtilities.invokeLater(() -> frame.setTitle(title));
     }
 
     private void handleGameOver(Player player) {
-        // Stop game timer and play game over jingle
-        gameTimer.stop();
-        Player.gameOverJingle();
+        // Play game over jingle, the game loop has already stopped
+        sounds.gameOverJingle();
+        deleteSuspendedGame();
+        saveReplay();
+
+        // Record the run, the writer thread puts it on disk
+        String place = "";
+        if (highScores != null) {
+            int rank = highScores.rankOf(player.getScore());
+            if (rank > 0) {
+                place = " That is #" + rank + " on the leaderboard!";
+            }
+            highScores.submit(player.getScore(), world.getTick(), world.getSeed());
+        }
 
         // Show game over dialog
-        int option = JOptionPane.showConfirmDialog(frame, "Game Over! Your score is: " + player.getScore() + ". Play again?", "Game Over", JOptionPane.YES_NO_OPTION);
+        int option = JOptionPane.showConfirmDialog(frame, "Game Over! Your score is: " + player.getScore() + "." + place + " Play again?", "Game Over", JOptionPane.YES_NO_OPTION);
         if (option == JOptionPane.YES_OPTION) {
             restart();
         } else {
             background.setGameOver(true);
             showEncouragementMessage(player.getScore());
+            showLeaderboard();
+            closeHighScores();
             System.exit(0);
         }
     }
 
+    // Open the leaderboard, the game still runs without one
+    private void openHighScores() {
+        try {
+            highScores = new HighScores(SCORE_LOG, SCORE_INDEX);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Finish writing the leaderboard
+    private void closeHighScores() {
+        if (highScores == null) {
+            return;
+        }
+        try {
+            highScores.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        highScores = null;
+    }
+
+    // Show the best runs, including the one just finished
+    private void showLeaderboard() {
+        if (highScores == null) {
+            return;
+        }
+        try {
+            highScores.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        HighScores.Entry[] top = highScores.getTop();
+        StringBuilder text = new StringBuilder("<html><body style='width: 200px;'><b>High Scores</b><br>");
+        for (int i = 0; i < Math.min(top.length, LEADERBOARD_LINES); i++) {
+            text.append(i + 1).append(". ").append(top[i].getScore()).append("<br>");
+        }
+        text.append("</body></html>");
+        JOptionPane.showMessageDialog(frame, text.toString());
+    }
+
     private void showEncouragementMessage(int score) {
         // Show encouragement message based on score
         if (score < 43) {
@@ -192,54 +410,19 @@ public class MusicGame implements Runnable {
         }
     }
 
-    private void updateGameState(Player player) {
-        // Update game state based on player score
-        if ((player.getScore() - lastPowerUpScore) % 75 == 0 && player.getScore() != 0) {
-            int powerUpsToSpawn = 1;
-            for (int i = 0; i < powerUpsToSpawn; i++) {
-                int x = (int) (Math.random() * FRAME_WIDTH);
-                int y = 0;
-                PowerUp newPowerUp = new PowerUp(x, y);
-                background.getPowerUps().add(newPowerUp);
-            }
-            lastPowerUpScore = player.getScore();
-        }
-
-        // Adjust game difficulty based on player score
-        if (player.getScore() < 100) {
-            Paddle.setPWidth(70);
-            background.resetColor();
-        } else if (player.getScore() < 200) {
-            Paddle.setPWidth(60);
-            background.setColors(195, 195, 170);
-        } else if (player.getScore() < 300) {
-            Paddle.setPWidth(50);
-            background.setColors(145, 145, 120);
-        } else if (player.getScore() < 400) {
-            Paddle.setPWidth(40);
-            background.setColors(95, 95, 70);
-        } else if (player.getScore() < 500) {
-            Paddle.setPWidth(30);
-            background.setColors(45, 45, 20);
-        } else if (player.getScore() >= 500) {
-            Paddle.setPWidth(20);
-            background.setColors(0, 0, 0);
-        }
-    }
-
     public void restart() {
         // Restart the game
-        if (!gameTimer.isRunning() && !background.isGameOver()) {
+        if (!gameLoop.isRunning() && !background.isGameOver()) {
             background.reset();
-            background.resetPowerUps();
-            gameTimer.restart();
-            gamePaused = false;
-            lastPowerUpScore = 0;
+            input.releaseAll();
+            shownScore = -1;
+            gameLoop.start();
             frame.requestFocusInWindow();
         }
     }
 
     public static void main(String[] args) {
+        AudioService.warmUp();
         new MainMenu();
     }
 }
\ No newline at end of file
@@ -0,0 +1,163 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+// The NetProtocol class holds what GameServer and GameClient agree on: the packet types,
+// the layout of a snapshot and how snapshots are delta-compressed. A snapshot is a flat
+// array of ints (score, level, player position, then every paddle and power-up). It is
+// sent as the list of fields that differ from a snapshot the client has acknowledged,
+// each as a small gap to the previous changed field and the change in value, both as
+// variable-length numbers. Most ticks only the player and a few paddles move, so a
+// snapshot usually takes a few dozen bytes.
+public class NetProtocol {
+    // Version sent with a join, both sides must use the same one
+    public static final int VERSION = 1;
+
+    // Packets from the client
+    public static final byte JOIN = 1;
+    public static final byte INPUT = 2;
+    public static final byte LEAVE = 3;
+
+    // Packets from the server
+    public static final byte WELCOME = 1;
+    public static final byte SNAPSHOT = 2;
+
+    // Largest datagram either side sends or expects
+    public static final int MAX_PACKET_BYTES = 65507;
+
+    // Snapshots remembered by each side for use as a baseline
+    public static final int HISTORY = 32;
+
+    // Ticks of input repeated in every input packet, so a lost packet costs nothing
+    public static final int INPUT_REDUNDANCY = 8;
+
+    // Snapshot layout: these header fields, then x, y and width of every paddle, then x and y of every power-up
+    public static final int SCORE = 0;
+    public static final int LEVEL = 1;
+    public static final int PLAYER_X = 2;
+    public static final int PLAYER_Y = 3;
+    public static final int GAME_OVER = 4;
+    public static final int LEADER_SCORE = 5;
+    public static final int PADDLE_COUNT = 6;
+    public static final int POWER_UP_COUNT = 7;
+    public static final int HEADER_FIELDS = 8;
+    public static final int PADDLE_FIELDS = 3;
+    public static final int POWER_UP_FIELDS = 2;
+
+    // Entities beyond these are not sent, so a snapshot always fits in one datagram
+    public static final int MAX_PADDLES = 2048;
+    public static final int MAX_POWER_UPS = 16;
+
+    // Number of fields needed for a world's snapshot
+    public static int fieldCount(World world) {
+        return HEADER_FIELDS + Math.min(world.getPaddleList().size(), MAX_PADDLES) * PADDLE_FIELDS
+                + Math.min(world.getPowerUps().size(), MAX_POWER_UPS) * POWER_UP_FIELDS;
+    }
+
+    // Write a world's snapshot into the array, which must hold fieldCount(world) fields
+    public static int capture(World world, int leaderScore, int[] fields) {
+        ArrayList<Paddle> paddles = world.getPaddleList();
+        ArrayList<PowerUp> powerUps = world.getPowerUps();
+        int paddleCount = Math.min(paddles.size(), MAX_PADDLES);
+        int powerUpCount = Math.min(powerUps.size(), MAX_POWER_UPS);
+        Player player = world.getPlayer();
+        fields[SCORE] = world.getScore();
+        fields[LEVEL] = world.getLevel();
+        fields[PLAYER_X] = player.getX();
+        fields[PLAYER_Y] = player.getY();
+        fields[GAME_OVER] = world.isGameOver() ? 1 : 0;
+        fields[LEADER_SCORE] = leaderScore;
+        fields[PADDLE_COUNT] = paddleCount;
+        fields[POWER_UP_COUNT] = powerUpCount;
+        int i = HEADER_FIELDS;
+        for (int p = 0; p < paddleCount; p++) {
+            Paddle paddle = paddles.get(p);
+            fields[i++] = paddle.getX();
+            fields[i++] = paddle.getY();
+            fields[i++] = paddle.getPWidth();
+        }
+        for (int p = 0; p < powerUpCount; p++) {
+            PowerUp powerUp = powerUps.get(p);
+            fields[i++] = powerUp.getX();
+            fields[i++] = powerUp.getY();
+        }
+        return i;
+    }
+
+    // Write the fields that differ from the baseline, a baseline of length 0 sends everything that is not 0
+    public static void writeDelta(ByteBuffer out, int[] base, int baseLength, int[] fields, int length) {
+        int changed = 0;
+        for (int i = 0; i < length; i++) {
+            if (fields[i] != (i < baseLength ? base[i] : 0)) {
+                changed++;
+            }
+        }
+        putVarInt(out, length);
+        putVarInt(out, changed);
+        int previous = -1;
+        for (int i = 0; i < length; i++) {
+            int old = i < baseLength ? base[i] : 0;
+            if (fields[i] != old) {
+                putVarInt(out, i - previous - 1);
+                putVarInt(out, zigZag(fields[i] - old));
+                previous = i;
+            }
+        }
+    }
+
+    // Rebuild a snapshot from its baseline and the changes, returns its length.
+    // The array must hold the length given at the start of the changes (see peekLength).
+    public static int readDelta(ByteBuffer in, int[] base, int baseLength, int[] fields) {
+        int length = getVarInt(in);
+        int changed = getVarInt(in);
+        for (int i = 0; i < length; i++) {
+            fields[i] = i < baseLength ? base[i] : 0;
+        }
+        int index = -1;
+        for (int c = 0; c < changed; c++) {
+            index += getVarInt(in) + 1;
+            if (index >= length) {
+                throw new IllegalArgumentException("Snapshot change past its end");
+            }
+            fields[index] += unZigZag(getVarInt(in));
+        }
+        return length;
+    }
+
+    // Length of the snapshot whose changes start at the buffer's position, without consuming them
+    public static int peekLength(ByteBuffer in) {
+        int position = in.position();
+        int length = getVarInt(in);
+        in.position(position);
+        return length;
+    }
+
+    // Variable-length unsigned number, 7 bits per byte
+    public static void putVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    public static int getVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed number");
+    }
+
+    // Small negative numbers as small unsigned ones: 0, -1, 1, -2, 2...
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
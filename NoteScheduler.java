@@ -0,0 +1,317 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+
+// The NoteScheduler class plays timestamped MIDI events without blocking the game.
+// Any thread can queue note-on/note-off events into a lock-free ring buffer. A single
+// dispatcher thread moves them into a time-ordered queue and hands every event that
+// falls inside a small lookahead window to the synthesizer, stamped with the exact
+// device time it should sound at. Nothing ever sleeps for the length of a note, so a
+// long note cannot delay the ones after it. The events can also go to the built-in
+// SoftSynth instead, which starts each one on the sample it is due.
+public class NoteScheduler implements Runnable {
+    // Size of the ring buffer, must be a power of two
+    private static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+
+    // Events due within this window are handed to the synthesizer early
+    private static final long LOOKAHEAD_NANOS = 20_000_000L;
+    // How often the dispatcher wakes up when nothing is due
+    private static final long POLL_NANOS = 5_000_000L;
+
+    // MIDI channel used for every event
+    private static final int CHANNEL = 0;
+    private static final int ALL_NOTES_OFF = 123;
+
+    private final Synthesizer synth;
+    private final Receiver receiver;
+    // Software synth that plays the events instead, null to use the MIDI synthesizer
+    private final SoftSynth softSynth;
+    private final long lookaheadNanos;
+
+    // Multi-producer ring buffer: producers claim slots with a CAS on tail and
+    // publish them through the slot's sequence number
+    private final long[] ringTimes = new long[CAPACITY];
+    private final int[] ringMessages = new int[CAPACITY];
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    // Time-ordered queue owned by the dispatcher thread (binary heap)
+    private long[] heapTimes = new long[CAPACITY];
+    private long[] heapOrder = new long[CAPACITY];
+    private int[] heapMessages = new int[CAPACITY];
+    private int heapSize;
+    private long order;
+
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    // Statistics
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long dispatchedCount;
+    private volatile long noteOnCount;
+    private volatile long totalLatencyNanos;
+    private volatile long maxLatencyNanos;
+
+    // Constructor
+    public NoteScheduler(Synthesizer synth) throws MidiUnavailableException {
+        this.synth = synth;
+        this.receiver = synth.getReceiver();
+        this.softSynth = null;
+        // Without a device clock we cannot send early, so play events when due
+        this.lookaheadNanos = synth.getMicrosecondPosition() >= 0 ? LOOKAHEAD_NANOS : 0;
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // Constructor, playing on the software synth, which holds early events until they are due
+    public NoteScheduler(SoftSynth softSynth) {
+        this.synth = null;
+        this.receiver = null;
+        this.softSynth = softSynth;
+        this.lookaheadNanos = LOOKAHEAD_NANOS;
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // Start the dispatcher thread
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "NoteScheduler");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    // Stop the dispatcher thread, events still queued are dropped
+    public synchronized void shutdown() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    // Play a note at the given System.nanoTime() for the given length
+    public void play(long atNanos, int note, int velocity, int millis) {
+        noteOn(atNanos, note, velocity);
+        noteOff(atNanos + millis * 1_000_000L, note);
+    }
+
+    public boolean noteOn(long atNanos, int note, int velocity) {
+        return offer(atNanos, pack(ShortMessage.NOTE_ON, note, velocity));
+    }
+
+    public boolean noteOff(long atNanos, int note) {
+        return offer(atNanos, pack(ShortMessage.NOTE_OFF, note, 0));
+    }
+
+    public boolean allNotesOff(long atNanos) {
+        return offer(atNanos, pack(ShortMessage.CONTROL_CHANGE, ALL_NOTES_OFF, 0));
+    }
+
+    // Queue an event, safe to call from any thread. Returns false if the queue is full.
+    private boolean offer(long atNanos, int message) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) (position & MASK);
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    ringTimes[slot] = atNanos;
+                    ringMessages[slot] = message;
+                    sequences.set(slot, position + 1);
+                    LockSupport.unpark(thread);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                droppedCount.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            drainRing();
+
+            // Hand everything inside the lookahead window to the synthesizer
+            long now = System.nanoTime();
+            while (heapSize > 0 && heapTimes[0] <= now + lookaheadNanos) {
+                long time = heapTimes[0];
+                int message = heapMessages[0];
+                removeFirst();
+                dispatch(time, message, now);
+            }
+
+            // Sleep until the next event enters the window, or the next poll
+            long wait = POLL_NANOS;
+            if (heapSize > 0) {
+                wait = Math.min(wait, heapTimes[0] - lookaheadNanos - System.nanoTime());
+            }
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            }
+        }
+    }
+
+    // Move published events from the ring buffer into the time-ordered queue
+    private void drainRing() {
+        while (true) {
+            int slot = (int) (head & MASK);
+            if (sequences.get(slot) != head + 1) {
+                return;
+            }
+            long time = ringTimes[slot];
+            int message = ringMessages[slot];
+            sequences.set(slot, head + CAPACITY);
+            head++;
+            add(time, message);
+        }
+    }
+
+    // Send one event, stamped with the device time it should sound at
+    private void dispatch(long time, int message, long now) {
+        int status = message >>> 16;
+        int data1 = (message >>> 8) & 0xFF;
+        int data2 = message & 0xFF;
+
+        long late = Math.max(0, now - time);
+        dispatchedCount++;
+        if (status == ShortMessage.NOTE_ON) {
+            noteOnCount++;
+            totalLatencyNanos += late;
+            if (late > maxLatencyNanos) {
+                maxLatencyNanos = late;
+            }
+        }
+
+        if (softSynth != null) {
+            softSynth.send(time, status, data1, data2);
+            return;
+        }
+        try {
+            long timestamp = -1;
+            if (lookaheadNanos > 0) {
+                long position = synth.getMicrosecondPosition();
+                if (position >= 0) {
+                    timestamp = position + Math.max(0, time - now) / 1000;
+                }
+            }
+            receiver.send(new ShortMessage(status, CHANNEL, data1, data2), timestamp);
+        } catch (InvalidMidiDataException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int pack(int status, int data1, int data2) {
+        return (status << 16) | (data1 << 8) | data2;
+    }
+
+    // Binary heap ordered by time, ties keep their queueing order
+    private void add(long time, int message) {
+        if (heapSize == heapTimes.length) {
+            heapTimes = Arrays.copyOf(heapTimes, heapSize * 2);
+            heapOrder = Arrays.copyOf(heapOrder, heapSize * 2);
+            heapMessages = Arrays.copyOf(heapMessages, heapSize * 2);
+        }
+        int i = heapSize++;
+        long seq = order++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(time, seq, parent)) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        heapTimes[i] = time;
+        heapOrder[i] = seq;
+        heapMessages[i] = message;
+    }
+
+    private void removeFirst() {
+        int last = --heapSize;
+        long time = heapTimes[last];
+        long seq = heapOrder[last];
+        int message = heapMessages[last];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(heapTimes[child + 1], heapOrder[child + 1], child)) {
+                child++;
+            }
+            if (!before(heapTimes[child], heapOrder[child], time, seq)) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        if (heapSize > 0) {
+            heapTimes[i] = time;
+            heapOrder[i] = seq;
+            heapMessages[i] = message;
+        }
+    }
+
+    private boolean before(long time, long seq, int index) {
+        return before(time, seq, heapTimes[index], heapOrder[index]);
+    }
+
+    private static boolean before(long time, long seq, long otherTime, long otherSeq) {
+        return time != otherTime ? time - otherTime < 0 : seq < otherSeq;
+    }
+
+    private void move(int from, int to) {
+        heapTimes[to] = heapTimes[from];
+        heapOrder[to] = heapOrder[from];
+        heapMessages[to] = heapMessages[from];
+    }
+
+    // Getters for the statistics
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    public long getLookaheadNanos() {
+        return lookaheadNanos;
+    }
+
+    // Average time between when a note should start and when it was sent
+    public long getAverageLatencyNanos() {
+        long notes = noteOnCount;
+        return notes == 0 ? 0 : totalLatencyNanos / notes;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+}
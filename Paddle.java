@@ -1,62 +1,96 @@
 import java.awt.*;
-import java.util.Random;
-import javax.swing.Timer;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.nio.ByteBuffer;
 
 // The Paddle class represents the paddles in the game.
 public class Paddle extends Control {
     // Constants
-    private static final int NORMAL_SPEED = 2;
+    static final int NORMAL_SPEED = 2; // pixels per tick
+
+    // Used until the world hands the paddle its random stream, one per thread so
+    // worlds running on different threads never share a stream
+    private static final ThreadLocal<GameRandom> FALLBACK_RANDOM =
+            ThreadLocal.withInitial(() -> new GameRandom(System.nanoTime()));
 
     // Attributes
-    private int x, y; // x and y coordinates of the paddle
-    public static int HEIGHT = 20; // Height of the paddle
-    public static int WIDTH = 70; // Width of the paddle
+    public static final int HEIGHT = 20; // Height of the paddle until it is changed
+    public static final int DEFAULT_WIDTH = 70; // Width of the paddle until the world sets it
     private int dy; // vertical speed
-    private int dx; // horizontal speed
-    private Random random;
+    private GameRandom random = FALLBACK_RANDOM.get();
     private boolean landed; // boolean to check if the paddle has landed on the player
-    private Timer speedTimer;
+    private boolean leavesAtBottom; // chart paddles leave the game instead of wrapping to the top
+
+    // Where this paddle is stored in the world's spatial grid
+    private SpatialGrid grid;
+    private int gridCell;
+    private int gridSlot;
 
     // Constructor
     public Paddle(int x, int y) {
-        super(x, y, 0, 0, WIDTH, HEIGHT); // Call to the parent constructor with parameters
-        this.x = x;
-        this.y = y;
+        super(x, y, 0, 0, DEFAULT_WIDTH, HEIGHT); // Call to the parent constructor with parameters
         this.dy = NORMAL_SPEED; // set the vertical speed
-        this.dx = NORMAL_SPEED; // set the horizontal speed
-        this.random = new Random();
         this.landed = false; // the player hasn't landed on this paddle yet
+    }
 
-        // Initialize the timer
-        speedTimer = new Timer(5000, new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                resetSpeed();
-            }
-        });
-        speedTimer.setRepeats(false);
+    // Bring a pooled paddle back as if it was new
+    void reinitialize(int x, int y) {
+        this.x = x;
+        this.y = y;
+        this.prevX = x;
+        this.prevY = y;
+        this.dy = NORMAL_SPEED;
+        this.landed = false;
+        this.leavesAtBottom = false;
+    }
+
+    // Write the paddle's state for a saved game
+    void writeState(ByteBuffer buffer) {
+        buffer.putInt(x).putInt(y).putInt(prevX).putInt(prevY);
+        buffer.putInt(dy);
+        buffer.put((byte) ((landed ? 1 : 0) | (leavesAtBottom ? 2 : 0)));
+    }
+
+    // Read the paddle's state back from a saved game
+    void readState(ByteBuffer buffer) {
+        x = buffer.getInt();
+        y = buffer.getInt();
+        prevX = buffer.getInt();
+        prevY = buffer.getInt();
+        dy = buffer.getInt();
+        int flags = buffer.get();
+        landed = (flags & 1) != 0;
+        leavesAtBottom = (flags & 2) != 0;
+    }
+
+    // Use the world's random stream for new positions
+    public void setRandom(GameRandom random) {
+        this.random = random;
     }
 
     // Method to draw the paddle
-    public void draw(Graphics g) {
-        g.setColor(new Color(0xD2B48C)); // Dark Beige
-        g.fillRect(x, y, WIDTH, HEIGHT);
+    public void draw(Graphics g, double alpha) {
+        g.drawImage(RenderCache.get().paddle(width, height), renderX(alpha), renderY(alpha), null);
     }
 
     // Method to move the paddle downwards to make it look like the game is moving
     public void moveDown(int bottomBound, int gameWidth) {
         y += dy;
-        if (y > bottomBound) {
+        if (y > bottomBound && !leavesAtBottom) {
             y = 0;
-            x = random.nextInt(gameWidth - WIDTH); // generate a new x position
+            x = random.nextInt(gameWidth - width); // generate a new x position
         }
+        if (grid != null) {
+            grid.update(this);
+        }
+    }
+
+    // Make the paddle leave the game at the bottom instead of wrapping to the top
+    public void setLeavesAtBottom(boolean leavesAtBottom) {
+        this.leavesAtBottom = leavesAtBottom;
     }
 
-    // Method to move the paddle to the left
-    public void moveLeft() {
-        x -= this.dx;
+    // Method to check whether the paddle has left the game at the bottom
+    public boolean hasLeft(int bottomBound) {
+        return leavesAtBottom && y > bottomBound;
     }
 
     // Getter for y-coordinate
@@ -71,12 +105,23 @@ public class Paddle extends Control {
 
     // Method to get the bounding rectangle of the paddle
     public Rectangle getBounds() {
-        return new Rectangle(x, y, WIDTH, HEIGHT);
+        return new Rectangle(x, y, width, height);
+    }
+
+    @Override
+    public int getBoundsWidth() {
+        return width;
+    }
+
+    @Override
+    public int getBoundsHeight() {
+        return height;
     }
 
     // Method to check if the paddle collides with the player
     public boolean collidesWith(Player player) {
-        return getBounds().intersects(player.getBounds());
+        return Collision.overlaps(x, y, width, height,
+                player.getX(), player.getY(), Player.SIZE, Player.SIZE);
     }
 
     // Method to mark this paddle as landed
@@ -89,45 +134,50 @@ public class Paddle extends Control {
         return landed;
     }
 
-    // Method to speed up the paddle
-    public void speedUp() {
-        this.dy *= 2;
-        this.dx *= 2;
-        speedTimer.start();
-    }
-
-    // Method to reset the paddle speed
-    public void resetSpeed() {
-        this.dy = NORMAL_SPEED;
-        this.dx = NORMAL_SPEED;
-        this.landed = false;
-        Paddle paddle = new Paddle(350, 200);
-        Background.paddleList.add(paddle);
-    }
-
     // Getter for paddle width
-    public static int getPWidth() {
-        return WIDTH;
+    public int getPWidth() {
+        return width;
     }
 
     // Getter for paddle height
-    public static int getPHeight() {
-        return HEIGHT;
+    public int getPHeight() {
+        return height;
     }
 
-    // Setter for paddle width
-    public static void setPWidth(int x) {
-        WIDTH = x;
+    // Setter for paddle width, the world sets it on all its paddles when the level changes
+    public void setPWidth(int x) {
+        width = x;
     }
 
     // Setter for paddle height
-    public static void setPHeight(int x) {
-        HEIGHT = x;
+    public void setPHeight(int x) {
+        height = x;
     }
 
     // Method to create the first paddle
-    public static void firstPaddle(Player player){
-        Paddle paddle = new Paddle(350, 200);
-        Background.paddleList.add(paddle);
+    public static void firstPaddle(World world){
+        world.spawnPaddle(350, 200);
+    }
+
+    // Spatial grid bookkeeping, managed by SpatialGrid
+    SpatialGrid getGrid() {
+        return grid;
+    }
+
+    void setGrid(SpatialGrid grid) {
+        this.grid = grid;
+    }
+
+    int getGridCell() {
+        return gridCell;
+    }
+
+    int getGridSlot() {
+        return gridSlot;
+    }
+
+    void setGridCell(int cell, int slot) {
+        this.gridCell = cell;
+        this.gridSlot = slot;
     }
 }
@@ -0,0 +1,186 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+// The Particles class throws the sparks shown when the player bounces or picks up a
+// power-up. Every particle lives in parallel float arrays of a fixed capacity, so
+// emitting, moving and drawing tens of thousands of them creates no objects. Live
+// particles are packed at the front of the arrays; one that burns out is replaced by the
+// last live one. They are drawn as pixels straight into the raster of one image, which is
+// copied to the screen with a single drawImage over the area they cover. Sparks are only
+// decoration: they have their own random stream and never touch the world, so replays,
+// saved games and the network code do not see them.
+public class Particles {
+    // Particles alive at once, more are not emitted until some burn out
+    public static final int DEFAULT_CAPACITY = 32768;
+
+    // Motion per tick, like the rest of the game
+    private static final float GRAVITY = 0.08f;
+    private static final float DRAG = 0.99f;
+    // Particles are drawn as squares of this many pixels
+    private static final int SIZE = 2;
+
+    // Sparks off the paddle when the player bounces
+    private static final int BOUNCE_COUNT = 48;
+    private static final int BOUNCE_LIFE = 60;
+    private static final int BOUNCE_COLOR = RenderCache.PADDLE_COLOR.getRGB() & 0xFFFFFF;
+    // Ring of sparks where a power-up was picked up
+    private static final int PICKUP_COUNT = 160;
+    private static final int PICKUP_LIFE = 90;
+    private static final int PICKUP_COLOR = RenderCache.POWER_UP_COLOR.getRGB() & 0xFFFFFF;
+
+    // Particle state, one entry per live particle in each array
+    private final int capacity;
+    private final float[] x;
+    private final float[] y;
+    private final float[] vx;
+    private final float[] vy;
+    private final float[] life;
+    private final float[] lifetime;
+    private final int[] color;
+    private int count;
+
+    private final GameRandom random = new GameRandom(0x5EED);
+
+    // Layer the particles are drawn into, and its pixels
+    private final int width;
+    private final int height;
+    private final BufferedImage layer;
+    private final int[] pixels;
+    // Area of the layer drawn last frame, cleared before the next one
+    private int drawnLeft;
+    private int drawnTop;
+    private int drawnRight;
+    private int drawnBottom;
+
+    // Constructor, for a screen of the given size
+    public Particles(int width, int height, int capacity) {
+        this.width = width;
+        this.height = height;
+        this.capacity = capacity;
+        x = new float[capacity];
+        y = new float[capacity];
+        vx = new float[capacity];
+        vy = new float[capacity];
+        life = new float[capacity];
+        lifetime = new float[capacity];
+        color = new int[capacity];
+        layer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        pixels = ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+    }
+
+    // Sparks flying up and to the sides from where the player hit the paddle
+    public void bounce(float atX, float atY) {
+        emit(BOUNCE_COUNT, atX, atY, (float) Math.PI, (float) (2 * Math.PI), 0.5f, 3.5f, BOUNCE_LIFE, BOUNCE_COLOR);
+    }
+
+    // A ring of sparks from where a power-up was picked up
+    public void pickup(float atX, float atY) {
+        emit(PICKUP_COUNT, atX, atY, 0, (float) (2 * Math.PI), 1.5f, 2.5f, PICKUP_LIFE, PICKUP_COLOR);
+    }
+
+    // Emit particles at a point, heading between the two angles (radians, clockwise from
+    // the right on screen) at speeds in pixels per tick. Returns how many fitted.
+    public int emit(int n, float atX, float atY, float fromAngle, float toAngle,
+            float minSpeed, float maxSpeed, int lifeTicks, int rgb) {
+        int emitted = Math.min(n, capacity - count);
+        for (int k = 0; k < emitted; k++) {
+            int i = count++;
+            double angle = fromAngle + random.nextDouble() * (toAngle - fromAngle);
+            float speed = minSpeed + (float) random.nextDouble() * (maxSpeed - minSpeed);
+            x[i] = atX;
+            y[i] = atY;
+            vx[i] = (float) Math.cos(angle) * speed;
+            vy[i] = (float) Math.sin(angle) * speed;
+            // Spread the lifetimes a little so a burst does not vanish all at once
+            lifetime[i] = lifeTicks * (0.5f + (float) random.nextDouble() * 0.5f);
+            life[i] = lifetime[i];
+            color[i] = rgb;
+        }
+        return emitted;
+    }
+
+    // Move every particle by one tick and drop the ones that burned out or left the screen
+    public void step() {
+        int i = 0;
+        while (i < count) {
+            float px = x[i] + vx[i];
+            float py = y[i] + vy[i];
+            float remaining = life[i] - 1;
+            if (remaining <= 0 || px < 0 || px >= width || py >= height) {
+                // Move the last live particle into this slot and look at it next
+                int last = --count;
+                x[i] = x[last];
+                y[i] = y[last];
+                vx[i] = vx[last];
+                vy[i] = vy[last];
+                life[i] = life[last];
+                lifetime[i] = lifetime[last];
+                color[i] = color[last];
+                continue;
+            }
+            x[i] = px;
+            y[i] = py;
+            vx[i] *= DRAG;
+            vy[i] = vy[i] * DRAG + GRAVITY;
+            life[i] = remaining;
+            i++;
+        }
+    }
+
+    // Draw the particles, alpha is how far we are between the last two ticks (0..1)
+    public void draw(Graphics g, double alpha) {
+        // Clear what was drawn last frame, row by row over its area only
+        for (int row = drawnTop; row < drawnBottom; row++) {
+            Arrays.fill(pixels, row * width + drawnLeft, row * width + drawnRight, 0);
+        }
+        drawnLeft = width;
+        drawnTop = height;
+        drawnRight = 0;
+        drawnBottom = 0;
+        if (count == 0) {
+            return;
+        }
+
+        // Positions are one tick ahead, step back along the velocity for frames in between
+        float back = (float) alpha - 1;
+        int maxX = width - SIZE;
+        int maxY = height - SIZE;
+        for (int i = 0; i < count; i++) {
+            int px = (int) (x[i] + vx[i] * back);
+            int py = (int) (y[i] + vy[i] * back);
+            if (px < 0 || py < 0 || px > maxX || py > maxY) {
+                continue;
+            }
+            // Fade out as the particle burns down
+            int argb = (int) (255 * life[i] / lifetime[i]) << 24 | color[i];
+            int p = py * width + px;
+            pixels[p] = argb;
+            pixels[p + 1] = argb;
+            pixels[p + width] = argb;
+            pixels[p + width + 1] = argb;
+            drawnLeft = Math.min(drawnLeft, px);
+            drawnTop = Math.min(drawnTop, py);
+            drawnRight = Math.max(drawnRight, px + SIZE);
+            drawnBottom = Math.max(drawnBottom, py + SIZE);
+        }
+        if (drawnRight > drawnLeft) {
+            g.drawImage(layer, drawnLeft, drawnTop, drawnRight, drawnBottom,
+                    drawnLeft, drawnTop, drawnRight, drawnBottom, null);
+        }
+    }
+
+    // Remove every particle
+    public void clear() {
+        count = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
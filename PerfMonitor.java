@@ -0,0 +1,253 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.swing.SwingUtilities;
+
+// The PerfMonitor class collects the game's frame-time and tick-cost numbers and draws
+// them as an overlay. The game loop records every tick and frame; once a second the
+// window is summarized (p50/p99/max), appended to a history that can be dumped to a
+// CSV file, and the histograms start over. Recording does not allocate.
+public class PerfMonitor {
+    // Length of one summary window and of the history kept for the CSV dump
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    private static final int HISTORY = 600;
+    // How often the EDT is probed for queue latency
+    private static final long EDT_PROBE_NANOS = 50_000_000L;
+
+    // Columns of one summary row
+    private static final String[] COLUMNS = {
+        "time_s", "tick_p50_us", "tick_p99_us", "tick_max_us",
+        "frame_p50_us", "frame_p99_us", "frame_max_us",
+        "edt_p50_us", "edt_p99_us", "edt_max_us",
+        "input_sim_p50_us", "input_sim_p99_us", "input_sim_max_us",
+        "input_present_p50_us", "input_present_p99_us", "input_present_max_us",
+        "drift_p50_us", "drift_p99_us", "drift_max_us",
+        "paddles", "power_ups", "alloc_kb_per_s", "dropped_ticks", "overruns"
+    };
+
+    // Histograms of the current window, written by the game loop thread
+    private final LatencyHistogram ticks = new LatencyHistogram();
+    private final LatencyHistogram frames = new LatencyHistogram();
+    private final LatencyHistogram edt = new LatencyHistogram();
+    private final LatencyHistogram inputToSim = new LatencyHistogram();
+    private final LatencyHistogram inputToPresent = new LatencyHistogram();
+    private final LatencyHistogram drift = new LatencyHistogram();
+
+    private final long start = System.nanoTime();
+    private long windowStart = start;
+    private long lastFrame;
+    private int paddles;
+    private int powerUps;
+    private long droppedTicks;
+    private long overruns;
+
+    // Allocation counter of the game loop thread
+    private long loopThreadId = -1;
+    private long allocatedAtWindowStart;
+
+    // EDT probe, one outstanding at a time
+    private volatile boolean probePending;
+    private long probePostedAt;
+    private long nextProbe;
+    private volatile long probeLatency = -1;
+    private final Runnable probe = () -> {
+        probeLatency = System.nanoTime() - probePostedAt;
+        probePending = false;
+    };
+
+    // History of summary rows, oldest first once it wraps
+    private final long[][] history = new long[HISTORY][COLUMNS.length];
+    private int historySize;
+    private int historyNext;
+
+    // Text shown by the overlay, rebuilt once a second
+    private volatile String[] lines = {"collecting..."};
+    private volatile boolean visible;
+    private final Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private final Color panel = new Color(0, 0, 0, 160);
+    // Panel position and width, and the line height measured when it was last drawn
+    private static final int PANEL_MARGIN = 4;
+    private static final int PANEL_PADDING = 8;
+    private static final int PANEL_WIDTH = 330;
+    private volatile int lineHeight = 17;
+
+    // Record the cost of one simulation step and the entity counts after it
+    public void recordTick(long nanos, int paddleCount, int powerUpCount) {
+        ticks.record(nanos);
+        paddles = paddleCount;
+        powerUps = powerUpCount;
+        if (loopThreadId < 0) {
+            loopThreadId = Thread.currentThread().getId();
+            allocatedAtWindowStart = allocatedBytes(loopThreadId);
+        }
+    }
+
+    // Record how long a key event waited before a tick applied it
+    public void recordInputToSim(long nanos) {
+        inputToSim.record(nanos);
+    }
+
+    // Record how long a key event took to show up on screen
+    public void recordInputToPresent(long nanos) {
+        inputToPresent.record(nanos);
+    }
+
+    // Record the ticks the game loop has dropped so far to catch up after a stall, and
+    // how many ticks so far took longer than their slot
+    public void recordDroppedTicks(long totalDropped, long totalOverruns) {
+        droppedTicks = totalDropped;
+        overruns = totalOverruns;
+    }
+
+    // Record how far the music clock was off on a tick, either way
+    public void recordDrift(long nanos) {
+        drift.record(Math.abs(nanos));
+    }
+
+    // Record that a frame was presented, and roll the window once a second
+    public void recordFrame() {
+        long now = System.nanoTime();
+        if (lastFrame != 0) {
+            frames.record(now - lastFrame);
+        }
+        lastFrame = now;
+
+        // Collect the last EDT probe and post the next one
+        long latency = probeLatency;
+        if (latency >= 0) {
+            edt.record(latency);
+            probeLatency = -1;
+        }
+        if (!probePending && now >= nextProbe) {
+            probePending = true;
+            probePostedAt = System.nanoTime();
+            nextProbe = now + EDT_PROBE_NANOS;
+            SwingUtilities.invokeLater(probe);
+        }
+
+        if (now - windowStart >= WINDOW_NANOS) {
+            rollWindow(now);
+        }
+    }
+
+    // Summarize the window into the history and the overlay text
+    private void rollWindow(long now) {
+        long allocated = loopThreadId >= 0 ? allocatedBytes(loopThreadId) : 0;
+        long allocRate = (long) ((allocated - allocatedAtWindowStart) / 1024.0 * 1e9 / (now - windowStart));
+        allocatedAtWindowStart = allocated;
+
+        long[] row;
+        synchronized (history) {
+            row = history[historyNext];
+            historyNext = (historyNext + 1) % HISTORY;
+            historySize = Math.min(historySize + 1, HISTORY);
+            row[0] = (now - start) / 1_000_000_000L;
+            summarize(ticks, row, 1);
+            summarize(frames, row, 4);
+            summarize(edt, row, 7);
+            summarize(inputToSim, row, 10);
+            summarize(inputToPresent, row, 13);
+            summarize(drift, row, 16);
+            row[19] = paddles;
+            row[20] = powerUps;
+            row[21] = allocRate;
+            row[22] = droppedTicks;
+            row[23] = overruns;
+        }
+
+        lines = new String[] {
+            String.format("tick  p50 %6d  p99 %6d  max %6d us", row[1], row[2], row[3]),
+            String.format("frame p50 %6d  p99 %6d  max %6d us", row[4], row[5], row[6]),
+            String.format("edt   p50 %6d  p99 %6d  max %6d us", row[7], row[8], row[9]),
+            String.format("in>sim p50 %5d  p99 %6d  max %6d us", row[10], row[11], row[12]),
+            String.format("in>scr p50 %5d  p99 %6d  max %6d us", row[13], row[14], row[15]),
+            String.format("drift  p50 %5d  p99 %6d  max %6d us", row[16], row[17], row[18]),
+            String.format("paddles %d  power-ups %d", row[19], row[20]),
+            String.format("overruns %d  dropped ticks %d", row[23], row[22]),
+            String.format("alloc %d KB/s  (F3 hide, F4 dump CSV)", row[21])
+        };
+
+        ticks.reset();
+        frames.reset();
+        edt.reset();
+        inputToSim.reset();
+        inputToPresent.reset();
+        drift.reset();
+        windowStart = now;
+    }
+
+    private static void summarize(LatencyHistogram histogram, long[] row, int column) {
+        row[column] = histogram.percentile(50) / 1000;
+        row[column + 1] = histogram.percentile(99) / 1000;
+        row[column + 2] = histogram.getMax() / 1000;
+    }
+
+    // Draw the overlay in the top-left corner if it is switched on
+    public void draw(Graphics g) {
+        if (!visible) {
+            return;
+        }
+        String[] text = lines;
+        g.setFont(font);
+        int lineHeight = g.getFontMetrics().getHeight();
+        this.lineHeight = lineHeight;
+        g.setColor(panel);
+        g.fillRect(PANEL_MARGIN, PANEL_MARGIN, PANEL_WIDTH, lineHeight * text.length + PANEL_PADDING);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < text.length; i++) {
+            g.drawString(text[i], PANEL_MARGIN + 6, PANEL_MARGIN + lineHeight * (i + 1));
+        }
+    }
+
+    // Size of the area the overlay covers from the top-left corner, for repainting it
+    public int getOverlayWidth() {
+        return PANEL_MARGIN + PANEL_WIDTH;
+    }
+
+    public int getOverlayHeight() {
+        return PANEL_MARGIN + lineHeight * lines.length + PANEL_PADDING;
+    }
+
+    public void toggle() {
+        visible = !visible;
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    // Write the recorded history to a CSV file
+    public void dumpCsv(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println(String.join(",", COLUMNS));
+            synchronized (history) {
+                int first = historySize < HISTORY ? 0 : historyNext;
+                for (int i = 0; i < historySize; i++) {
+                    long[] row = history[(first + i) % HISTORY];
+                    StringBuilder line = new StringBuilder();
+                    for (int c = 0; c < row.length; c++) {
+                        if (c > 0) {
+                            line.append(',');
+                        }
+                        line.append(row[c]);
+                    }
+                    out.println(line);
+                }
+            }
+        }
+    }
+
+    // Bytes allocated so far by a thread, or 0 if the JVM cannot tell us
+    private static long allocatedBytes(long threadId) {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(threadId);
+        }
+        return 0;
+    }
+}
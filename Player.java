@@ -1,10 +1,5 @@
-import javax.sound.midi.*;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.awt.*;
-import javax.swing.Timer; // Import for Timer
-import java.awt.event.ActionListener; // Import for ActionListener
-import java.awt.event.ActionEvent; // Import for ActionEvent
+import java.nio.ByteBuffer;
 
 // The Player class represents the player in the game.
 public class Player extends Control {
@@ -16,6 +11,22 @@ public class Player extends Control {
     private double fallSpeed = GRAVITY;
     private boolean canCollideWithPaddle = true;
 
+    // Effect durations in game time
+    private static final int COLLISION_COOLDOWN_MILLIS = 500;
+    private static final int SLOW_FALL_MILLIS = 5000;
+
+    // Timed effects, built once so scheduling them does not allocate
+    private EffectScheduler effects;
+    private final EffectScheduler.Effect allowCollision =
+            new EffectScheduler.Owned(this, 0, () -> canCollideWithPaddle = true);
+    private final EffectScheduler.Effect resetFallSpeed =
+            new EffectScheduler.Owned(this, 1, () -> fallSpeed = GRAVITY);
+    private final EffectScheduler.Effect stopMovingEffect =
+            new EffectScheduler.Owned(this, 2, this::stopMoving);
+
+    // Receives bounce notifications from the world
+    private World.Events events = World.Events.NONE;
+
     // Variables for the player's vertical velocity, score, direction, and color
     private double velocityY;
     private int score = 0;
@@ -28,7 +39,60 @@ public class Player extends Control {
     public Player(int x, int y, int velocityX, int velocityY) {
         super(x, y, velocityX, velocityY, SIZE, SIZE);
         this.velocityY = velocityY;
-        initializeSound();
+    }
+
+    // Set who is told about bounces
+    public void setEvents(World.Events events) {
+        this.events = events;
+    }
+
+    // Set the scheduler that runs this player's timed effects. Without one,
+    // effects such as the collision cooldown never expire.
+    public void setEffects(EffectScheduler effects) {
+        this.effects = effects;
+    }
+
+    // Run an effect after the given game time
+    private void scheduleEffect(int millis, EffectScheduler.Effect effect) {
+        if (effects != null) {
+            effects.scheduleMillis(millis, effect);
+        }
+    }
+
+    // Timed effect with the given code, used when a saved game is restored
+    EffectScheduler.Effect getEffect(int code) {
+        switch (code) {
+            case 0:
+                return allowCollision;
+            case 1:
+                return resetFallSpeed;
+            case 2:
+                return stopMovingEffect;
+            default:
+                throw new IllegalArgumentException("Unknown player effect " + code);
+        }
+    }
+
+    // Write the player's state for a saved game
+    void writeState(ByteBuffer buffer) {
+        buffer.putInt(x).putInt(y).putInt(prevX).putInt(prevY);
+        buffer.putInt(velocityX).putDouble(velocityY).putDouble(fallSpeed);
+        buffer.putInt(score).putInt(direction);
+        buffer.put((byte) (canCollideWithPaddle ? 1 : 0));
+    }
+
+    // Read the player's state back from a saved game
+    void readState(ByteBuffer buffer) {
+        x = buffer.getInt();
+        y = buffer.getInt();
+        prevX = buffer.getInt();
+        prevY = buffer.getInt();
+        velocityX = buffer.getInt();
+        velocityY = buffer.getDouble();
+        fallSpeed = buffer.getDouble();
+        score = buffer.getInt();
+        direction = buffer.getInt();
+        canCollideWithPaddle = buffer.get() != 0;
     }
 
     // Method to increase the player's score
@@ -44,21 +108,19 @@ public class Player extends Control {
     public void slowFall() {
         fallSpeed = 0; // Stop fall speed
 
-        // Create a timer to reset the fall speed after 5 seconds
-        Timer resetFallSpeedTimer = new Timer(5000, new ActionListener() {
-            @Override
-            public void actionPerformed(ActionEvent e) {
-                fallSpeed = GRAVITY; // Reset to default fall speed
-            }
-        });
-        resetFallSpeedTimer.setRepeats(false);
-        resetFallSpeedTimer.start();
+        // Reset the fall speed after 5 seconds of game time
+        scheduleEffect(SLOW_FALL_MILLIS, resetFallSpeed);
+    }
+
+    // Stop the player's horizontal movement after the given game time
+    public void stopMovingAfter(int millis) {
+        scheduleEffect(millis, stopMovingEffect);
     }
 
     // Method to reverse the player's vertical velocity to simulate a bounce
     public void bounce() {
         velocityY = -JUMP_STRENGTH;
-        playNote(this); // Pass the Player object as an argument
+        events.bounce(this);
     }
 
     // Method to move the player based on velocity and direction
@@ -84,27 +146,20 @@ public class Player extends Control {
 
     // Method to draw the player
     @Override
-    public void draw(Graphics g) {
-        g.setColor(new Color(0x664321));
-        g.fillRect(x, y, SIZE, SIZE);
+    public void draw(Graphics g, double alpha) {
+        g.drawImage(RenderCache.get().player(), renderX(alpha), renderY(alpha), null);
     }
 
     // Method to check if the player is colliding with a paddle
     public boolean isCollidingWithPaddle(Paddle paddle) {
-        boolean isColliding = getBounds().intersects(paddle.getBounds());
+        boolean isColliding = Collision.overlaps(x, y, SIZE, SIZE,
+                paddle.getX(), paddle.getY(), paddle.getPWidth(), paddle.getPHeight());
         if (isColliding && canCollideWithPaddle) {
             bounce();
             canCollideWithPaddle = false;
 
-            // Create a timer to reset the canCollideWithPaddle flag after 500 milliseconds
-            Timer resetCollisionTimer = new Timer(500, new ActionListener() {
-                @Override
-                public void actionPerformed(ActionEvent e) {
-                    canCollideWithPaddle = true; // Allow collisions again
-                }
-            });
-            resetCollisionTimer.setRepeats(false);
-            resetCollisionTimer.start();
+            // Allow collisions again after 500 milliseconds of game time
+            scheduleEffect(COLLISION_COOLDOWN_MILLIS, allowCollision);
         }
         return isColliding;
     }
@@ -139,6 +194,16 @@ public class Player extends Control {
         return new Rectangle(getX(), getY(), SIZE, SIZE);
     }
 
+    @Override
+    public int getBoundsWidth() {
+        return SIZE;
+    }
+
+    @Override
+    public int getBoundsHeight() {
+        return SIZE;
+    }
+
     // Getter and setter methods for the player's x and y coordinates
     public int getX() {
         return x;
@@ -194,183 +259,4 @@ public class Player extends Control {
     public int setScore(int i) {
         return this.score;
     }
-
-    // Sound class
-    // Sound class methods
-    private static final int VELOCITY_HIGH = 127;
-    private static final int VELOCITY_LOW = 90;
-    private static final int DURATION_LONG = 500;
-    private static final int DURATION_SHORT = 250;
-
-    // Constants for the sound
-
-    private static final int MAX_ACTIVE_NOTES = 6;
-    private static final AtomicInteger activeNotes = new AtomicInteger(0);
-
-    // Variables for the synthesizer, MIDI channel, and executor
-    private static Synthesizer synth;
-    private static MidiChannel channel;
-    private static ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-
-    // Arrays for the level one notes in the scales
-    private static final int[] levelOneNotes = {
-        64, 71, 73, 64, 71, 73, 64, 71, 73, 71, 69, 67, 71, 69, 67,
-        71, 64, 64, 71, 73, 64, 71, 73, 64, 71, 73, 71, 69, 67, 71,
-        69, 67, 71, 64, 64, 71, 73, 64, 71, 73, 64, 71, 73, 71, 69,
-        67, 71, 69, 67, 71
-    };
-
-    // Arrays for the level two notes in the scales
-    private static final int[] levelTwoNotes = {
-        46, 49, 51, 52, 54, 46, 49, 51, 52, 54, 46, 49, 51, 52, 54,
-        46, 49, 51, 52, 54
-    };
-
-    // Arrays for the level three notes in the scales
-    private static final int[] levelThreeNotes = {
-        42, 45, 47, 48, 50, 42, 45, 47, 48, 50, 42, 45, 47, 48, 50,
-        42, 45, 47, 48, 50
-    };
-
-    // Arrays for the level four notes in the scales
-    private static final int[] levelFourNotes = {
-        38, 41, 43, 44, 46, 38, 41, 43, 44, 46, 38, 41, 43, 44, 46,
-        38, 41, 43, 44, 46
-    };
-
-    // Arrays for the level five notes in the scales
-    private static final int[] levelFiveNotes = {
-        34, 37, 39, 40, 42, 34, 37, 39, 40, 42, 34, 37, 39, 40, 42,
-        34, 37, 39, 40, 42
-    };
-
-    private static int currentNoteIndex = 0;
-
-    static {
-        initializeSound();
-    }
-
-    private static int[] lastSelectedScale = null;
-
-    private static boolean isSoundPlaying = false;
-
-    public static void playNote(Player player) {
-        if (isSoundPlaying) {
-            return;
-        }
-
-        int[] selectedScale = (player.getScore() >= 100) ? levelTwoNotes : levelOneNotes;
-        int[] selectedScale2 = (player.getScore() >= 200) ? levelThreeNotes : selectedScale;
-        int[] selectedScale3 = (player.getScore() >= 300) ? levelFourNotes : selectedScale2;
-        int[] selectedScale4 = (player.getScore() >= 400) ? levelFiveNotes : selectedScale3;
-        int[] selectedScale5 = (player.getScore() >= 500) ? levelFiveNotes : selectedScale4;
-
-        int[] currentScale = selectedScale5; // Use the highest available scale
-
-        if (lastSelectedScale != currentScale) {
-            stopAllNotes();
-            lastSelectedScale = currentScale;
-            currentNoteIndex = 0; // Reset the note index when the scale changes
-        }
-
-        int note = currentScale[currentNoteIndex];
-        int velocity = ((currentNoteIndex % 8 == 0) ? VELOCITY_HIGH : VELOCITY_LOW);
-        int duration = ((currentNoteIndex % 2 == 0) ? DURATION_LONG : DURATION_SHORT);
-
-        if (activeNotes.get() < MAX_ACTIVE_NOTES) {
-            activeNotes.incrementAndGet();
-            playSound(note, velocity, duration);
-            isSoundPlaying = true;
-        }
-
-        currentNoteIndex = (currentNoteIndex + 1) % currentScale.length;
-    }
-
-    // Method to play a sound
-    private static void playSound(int note, int velocity, int duration) {
-        executor.submit(() -> {
-            try {
-                channel.allNotesOff();
-                channel.noteOn(note, velocity);
-                Thread.sleep(duration);
-                channel.noteOff(note);
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                activeNotes.decrementAndGet();
-                isSoundPlaying = false;
-            }
-        });
-    }
-
-    // Method to stop all notes
-    private static void stopAllNotes() {
-        if (channel != null) {
-            channel.allNotesOff();
-        }
-    }
-
-    // Method to initialize the sound
-    private static void initializeSound() {
-        try {
-            synth = MidiSystem.getSynthesizer();
-            synth.open();
-            channel = synth.getChannels()[0];
-        } catch (MidiUnavailableException e) {
-            e.printStackTrace();
-        }
-    }
-
-    // Method to reset the sound
-    public static void reset() {
-        try {
-            // Shut down the executor
-            executor.shutdown();
-            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
-                executor.shutdownNow();
-            }
-
-            // Close the synth
-            if (synth != null) {
-                synth.close();
-                synth = null;
-            }
-
-            // Reset other variables
-            currentNoteIndex = 0;
-            lastSelectedScale = null;
-            activeNotes.set(0);
-
-            // Reinitialize the executor and the sound
-            executor = Executors.newSingleThreadScheduledExecutor();
-            initializeSound();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-    }
-
-    // Method to play the game over jingle
-    public static void gameOverJingle() {
-        stopAllNotes();
-        int[] jingleNotes = {45, 57, 41, 52, 36};
-        long delay = 0;
-        for (int note : jingleNotes) {
-            executor.schedule(() -> {
-                if (activeNotes.get() < MAX_ACTIVE_NOTES) {
-                    activeNotes.incrementAndGet();
-                    playSound(note, 127, 300);
-                }
-            }, delay, TimeUnit.MILLISECONDS);
-            delay += 200;
-        }
-    }
-
-    // Method to play the power-up sound
-    public static void playPowerUpSound() {
-        stopAllNotes();
-        if (activeNotes.get() < MAX_ACTIVE_NOTES) {
-            activeNotes.incrementAndGet();
-            playSound(90, 127, 500);
-        }
-    }
 }
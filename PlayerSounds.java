@@ -0,0 +1,151 @@
+// The PlayerSounds class plays the notes of one game: the next note of the level's scale,
+// or of the song, on every bounce, the power-up sound and the game over jingle. Each game
+// has its own, so games running side by side keep their own place in the music; the
+// synthesizer itself is the one shared by the whole process (see AudioService).
+public class PlayerSounds {
+    private static final int VELOCITY_HIGH = 127;
+    private static final int VELOCITY_LOW = 90;
+    private static final int DURATION_LONG = 500;
+    private static final int DURATION_SHORT = 250;
+    private static final int SHORTEST_CHART_NOTE_MILLIS = 100;
+    private static final int LONGEST_CHART_NOTE_MILLIS = 800;
+
+    // Spacing of the notes in the game over jingle
+    private static final int JINGLE_SPACING = 200;
+
+    // Note scheduler of the shared audio service, null until it is warm
+    private volatile NoteScheduler notes;
+
+    // Position in the current level's scale
+    private int currentNoteIndex = 0;
+
+    // Scale and transposition of the current level, set when the level changes
+    private volatile Difficulty.Level level = Difficulty.STANDARD.getLevel(0);
+
+    // Song whose lead line replaces the level's scale, null to use the scale
+    private volatile Chart chart;
+    private int chartNoteIndex = 0;
+
+    // Play the given song's notes on bounces, or the built-in scales with null
+    public void setChart(Chart newChart) {
+        chart = newChart;
+        chartNoteIndex = 0;
+    }
+
+    // Switch to the scale of a new level, cutting off the notes of the old one if it sounds different
+    public void setLevel(Difficulty.Level newLevel) {
+        boolean sameSound = newLevel.soundsLike(level);
+        level = newLevel;
+        if (!sameSound) {
+            stopAllNotes();
+            currentNoteIndex = 0;
+        }
+    }
+
+    public void playNote(Player player) {
+        playNote(player, System.nanoTime());
+    }
+
+    // Play the next note at the given System.nanoTime(), usually the music clock's time of the bounce
+    public void playNote(Player player, long atNanos) {
+        if (notes == null) {
+            return;
+        }
+
+        Chart song = chart;
+        if (song != null && song.size() > 0) {
+            playChartNote(song, player, atNanos);
+            return;
+        }
+
+        Difficulty.Level current = level;
+        if (currentNoteIndex >= current.getScaleLength()) {
+            currentNoteIndex = 0;
+        }
+
+        int note = current.getScaleNote(currentNoteIndex);
+        int velocity = ((currentNoteIndex % 8 == 0) ? VELOCITY_HIGH : VELOCITY_LOW);
+        int duration = ((currentNoteIndex % 2 == 0) ? DURATION_LONG : DURATION_SHORT);
+
+        playSound(atNanos, note, velocity, duration);
+
+        currentNoteIndex = (currentNoteIndex + 1) % current.getScaleLength();
+    }
+
+    // Play the next note of the chart, moved by the current level's transposition
+    private void playChartNote(Chart song, Player player, long atNanos) {
+        if (chartNoteIndex >= song.size()) {
+            chartNoteIndex = 0;
+        }
+
+        int note = Math.max(0, Math.min(127, song.getNote(chartNoteIndex) + level.getTranspose()));
+        int duration = Math.max(SHORTEST_CHART_NOTE_MILLIS,
+                Math.min(LONGEST_CHART_NOTE_MILLIS, song.getDurationMicros(chartNoteIndex) / 1000));
+        playSound(atNanos, note, song.getVelocity(chartNoteIndex), duration);
+
+        chartNoteIndex++;
+    }
+
+    // Method to play a sound, cutting off whatever was playing before it
+    private void playSound(long atNanos, int note, int velocity, int duration) {
+        notes.allNotesOff(atNanos);
+        notes.play(atNanos, note, velocity, duration);
+    }
+
+    // Method to stop all notes
+    private void stopAllNotes() {
+        if (notes != null) {
+            notes.allNotesOff(System.nanoTime());
+        }
+    }
+
+    // Method to initialize the sound, called once by the windowed game.
+    // Does not wait for the shared synth; notes are silent until it is warm.
+    public void initialize() {
+        AudioService.ready().thenAccept(service -> {
+            if (service != null) {
+                notes = service.getNoteScheduler();
+            }
+        });
+    }
+
+    // Method to reset the sound
+    public void reset() {
+        // Silence whatever is playing, the shared synth stays open
+        stopAllNotes();
+
+        // Reset other variables
+        currentNoteIndex = 0;
+        chartNoteIndex = 0;
+    }
+
+    // Method to play the game over jingle
+    public void gameOverJingle() {
+        if (notes == null) {
+            return;
+        }
+        int[] jingleNotes = {45, 57, 41, 52, 36};
+        long start = System.nanoTime();
+        for (int i = 0; i < jingleNotes.length; i++) {
+            playSound(start + i * JINGLE_SPACING * 1_000_000L, jingleNotes[i], 127, 300);
+        }
+    }
+
+    // Returns the note scheduler, or null if there is no sound
+    public NoteScheduler getNoteScheduler() {
+        return notes;
+    }
+
+    // Method to play the power-up sound
+    public void playPowerUpSound() {
+        playPowerUpSound(System.nanoTime());
+    }
+
+    // Method to play the power-up sound at the given System.nanoTime()
+    public void playPowerUpSound(long atNanos) {
+        if (notes == null) {
+            return;
+        }
+        playSound(atNanos, 90, 127, 500);
+    }
+}
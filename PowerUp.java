@@ -1,30 +1,58 @@
 import java.awt.*;
-import java.awt.geom.Ellipse2D;
-import java.util.ArrayList;
-import java.util.Random;
-import javax.swing.Timer;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.nio.ByteBuffer;
 
 public class PowerUp extends Control {
     // Constants
     public static final int DIAMETER = 20;
+    private static final int RADIUS = DIAMETER / 2;
     private static final double SPEED = 3.5; // Speed of the power-up
-    private Random random = new Random();
-    private int timeFreeze = random.nextInt(25) + 1;
+    private int timeFreeze;
     private static final int FRAME_WIDTH = 800;
     private static final int FRAME_HEIGHT = 600;
 
+    // Used until the world hands the power-up its random stream, one per thread
+    private static final ThreadLocal<GameRandom> FALLBACK_RANDOM =
+            ThreadLocal.withInitial(() -> new GameRandom(System.nanoTime()));
+    private GameRandom random = FALLBACK_RANDOM.get();
+
 
     // Constructor
     public PowerUp(int x, int y) {
         super(x, y, 0, 0, DIAMETER, DIAMETER); // Call to the parent constructor with parameters
+        this.timeFreeze = random.nextInt(25) + 1;
+    }
+
+    // Bring a pooled power-up back as if it was new
+    void reinitialize(int x, int y) {
+        this.x = x;
+        this.y = y;
+        this.prevX = x;
+        this.prevY = y;
+    }
+
+    // Write the power-up's state for a saved game
+    void writeState(ByteBuffer buffer) {
+        buffer.putInt(x).putInt(y).putInt(prevX).putInt(prevY).putInt(timeFreeze);
+    }
+
+    // Read the power-up's state back from a saved game
+    void readState(ByteBuffer buffer) {
+        x = buffer.getInt();
+        y = buffer.getInt();
+        prevX = buffer.getInt();
+        prevY = buffer.getInt();
+        timeFreeze = buffer.getInt();
+    }
+
+    // Use the world's random stream from now on
+    public void setRandom(GameRandom random) {
+        this.random = random;
+        this.timeFreeze = random.nextInt(25) + 1;
     }
 
     // Draw the power-up
-    public void draw(Graphics g) {
-        g.setColor(new Color(0, 206, 209)); // teal
-        g.fillOval(x, y, DIAMETER, DIAMETER);
+    public void draw(Graphics g, double alpha) {
+        g.drawImage(RenderCache.get().powerUp(), renderX(alpha), renderY(alpha), null);
     }
 
     // Move the power-up downwards
@@ -34,7 +62,7 @@ public class PowerUp extends Control {
         // If the power-up has moved off the bottom of the screen, reset its position to the top
         if (y > FRAME_HEIGHT) {
             y = 0;
-            x = (int) (Math.random() * FRAME_WIDTH); // Generate a new random x coordinate
+            x = random.nextInt(FRAME_WIDTH); // Generate a new random x coordinate
         }
     }
 
@@ -46,60 +74,43 @@ public class PowerUp extends Control {
         }
     }
 
-    public static PowerUp checkSpawn(int score, boolean gameJustStarted, boolean powerUpExists) {
-        // Spawn a power-up only if the player's score is a multiple of 50, the game has not just started, and there is no existing power-up
-        if (score % 75 == 0 && score != 0 && !gameJustStarted && !powerUpExists) {
-            Random random = new Random();
-            int x = random.nextInt(Background.getFrameWidth());
-            int y = random.nextInt(Background.getFrameHeight());
-            return new PowerUp(x, y);
-        }
-        return null;
+    // Check if a power-up should spawn: only if the player's score is a multiple of the cadence, the game has not just started, and there is no existing power-up
+    public static boolean shouldSpawn(int score, int cadence, boolean gameJustStarted, boolean powerUpExists) {
+        return score % cadence == 0 && score != 0 && !gameJustStarted && !powerUpExists;
     }
 
-        public boolean isCollidingWithPlayer(Player player) {
-        if (getBounds().intersects(player.getBounds())) {
+    public boolean isCollidingWithPlayer(Player player) {
+        if (Collision.circleIntersectsRect(x + RADIUS, y + RADIUS, RADIUS,
+                player.getX(), player.getY(), Player.SIZE, Player.SIZE)) {
             player.stopMoving();
             
             // Move the player to the top of the JFrame
             player.setY(0);
 
             // Slow down the player's fall
-player.slowFall();
-
-            Timer timer = new Timer(5000, new ActionListener() {
-                @Override
-                public void actionPerformed(ActionEvent e) {
-                    player.stopMoving();
-                }
-            });
-            timer.setRepeats(false);
-            timer.start();
-
-                        return true;
+            player.slowFall();
+
+            // Stop the player after 5 seconds of game time
+            player.stopMovingAfter(5000);
+
+            return true;
         }
         return false;
     }
 
-        public void collideWithPaddles(ArrayList<Paddle> paddles) {
-        for (Paddle paddle : paddles) {
-            if (getBounds().intersects(paddle.getBounds())) {
-                paddle.speedUp();
-                Timer timer = new Timer(5000, new ActionListener() {
-                    @Override
-                    public void actionPerformed(ActionEvent e) {
-                        paddle.resetSpeed();
-                    }
-                });
-                timer.setRepeats(false);
-                timer.start();
-            }
-        }
+    // Get the bounding box of the PowerUp's circle
+    public Rectangle getBounds() {
+        return new Rectangle(x, y, DIAMETER, DIAMETER);
     }
 
-    // Get the bounding circle of the PowerUp
-    public Rectangle getBounds() {
-        return new Ellipse2D.Double(x, y, DIAMETER, DIAMETER).getBounds();
+    @Override
+    public int getBoundsWidth() {
+        return DIAMETER;
+    }
+
+    @Override
+    public int getBoundsHeight() {
+        return DIAMETER;
     }
 
     // Getters and setters
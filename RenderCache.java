@@ -0,0 +1,95 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// The RenderCache class prebakes the game's sprites into images compatible with the
+// screen, so drawing an entity is a single image copy with no Color allocation.
+// Paddle sprites are kept per width because the paddles shrink as the game gets
+// harder. The cache only holds images, never game state, so it is shared.
+public final class RenderCache {
+    // Colors of the entities
+    public static final Color PLAYER_COLOR = new Color(0x664321);
+    public static final Color PADDLE_COLOR = new Color(0xD2B48C); // Dark Beige
+    public static final Color POWER_UP_COLOR = new Color(0, 206, 209); // teal
+
+    private static final RenderCache SHARED = new RenderCache();
+
+    private Image player;
+    private Image powerUp;
+    private Image[] paddles = new Image[128];
+    private int paddleHeight = -1;
+
+    private RenderCache() {
+    }
+
+    // The cache shared by every renderer
+    public static RenderCache get() {
+        return SHARED;
+    }
+
+    // Sprite of the player
+    public synchronized Image player() {
+        if (player == null) {
+            player = createRect(Player.SIZE, Player.SIZE, PLAYER_COLOR);
+        }
+        return player;
+    }
+
+    // Sprite of a power-up
+    public synchronized Image powerUp() {
+        if (powerUp == null) {
+            int size = PowerUp.DIAMETER;
+            powerUp = createImage(size, size, Transparency.TRANSLUCENT);
+            Graphics2D g = (Graphics2D) powerUp.getGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            g.setColor(POWER_UP_COLOR);
+            g.fillOval(0, 0, size, size);
+            g.dispose();
+        }
+        return powerUp;
+    }
+
+    // Sprite of a paddle with the given size, baked the first time each width is used
+    public synchronized Image paddle(int width, int height) {
+        if (height != paddleHeight) {
+            Arrays.fill(paddles, null);
+            paddleHeight = height;
+        }
+        if (width >= paddles.length) {
+            paddles = Arrays.copyOf(paddles, width + 1);
+        }
+        Image sprite = paddles[width];
+        if (sprite == null) {
+            sprite = createRect(width, height, PADDLE_COLOR);
+            paddles[width] = sprite;
+        }
+        return sprite;
+    }
+
+    // A solid image of the given size, used for sprites
+    public static Image createRect(int width, int height, Color color) {
+        Image image = createImage(width, height, Transparency.OPAQUE);
+        Graphics2D g = (Graphics2D) image.getGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    // An image in the screen's pixel format, or a plain ARGB image when headless
+    private static Image createImage(int width, int height, int transparency) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration();
+            return config.createCompatibleImage(width, height, transparency);
+        }
+        int type = transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        return new BufferedImage(width, height, type);
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// The Replay class plays back a session written by InputRecorder. It rebuilds the world
+// from the recorded seed, feeds it the recorded directions tick by tick with no window,
+// sound or waiting, and checks that it ends on the recorded tick and score. Sessions
+// played with a chart or a level table file load the same files again, and sessions
+// continued from a saved game start from the saved state kept in the recording.
+// Usage: java -Djava.awt.headless=true Replay file... [repeat]
+public class Replay implements World.Input {
+    private final int tickRate;
+    private final long seed;
+    private final Chart chart;
+    private final Difficulty difficulty;
+    private final long startTick;
+    private final byte[] startState;
+    private final long[] changeTicks;
+    private final int[] changeDirections;
+    private final long finalTick;
+    private final int finalScore;
+
+    // Playback position
+    private int next;
+    private int direction;
+
+    // Constructor
+    private Replay(int tickRate, long seed, Chart chart, Difficulty difficulty, long startTick, byte[] startState,
+            long[] changeTicks, int[] changeDirections, long finalTick, int finalScore) {
+        this.tickRate = tickRate;
+        this.seed = seed;
+        this.chart = chart;
+        this.difficulty = difficulty;
+        this.startTick = startTick;
+        this.startState = startState;
+        this.changeTicks = changeTicks;
+        this.changeDirections = changeDirections;
+        this.finalTick = finalTick;
+        this.finalScore = finalScore;
+    }
+
+    // Read a recording from a file
+    public static Replay load(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    // Read a recording from a stream
+    public static Replay read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != InputRecorder.MAGIC) {
+            throw new IOException("Not a replay file");
+        }
+        int version = in.readUnsignedByte();
+        if (version != InputRecorder.VERSION) {
+            throw new IOException("Unsupported replay version " + version);
+        }
+        int tickRate = (int) readVarLong(in);
+        long seed = in.readLong();
+        String chartName = in.readUTF();
+        Chart chart = chartName.isEmpty() ? null : ChartLoader.load(Paths.get(chartName));
+        String levelsName = in.readUTF();
+        Difficulty difficulty = levelsName.isEmpty() ? Difficulty.STANDARD : Difficulty.load(Paths.get(levelsName));
+        long startTick = readVarLong(in);
+        byte[] startState = new byte[(int) readVarLong(in)];
+        in.readFully(startState);
+        int count = (int) readVarLong(in);
+        long[] ticks = new long[count];
+        int[] directions = new int[count];
+        long tick = startTick;
+        for (int i = 0; i < count; i++) {
+            tick += readVarLong(in);
+            ticks[i] = tick;
+            directions[i] = in.readByte();
+        }
+        long finalTick = readVarLong(in);
+        int finalScore = (int) readVarLong(in);
+        return new Replay(tickRate, seed, chart, difficulty, startTick, startState, ticks, directions,
+                finalTick, finalScore);
+    }
+
+    @Override
+    public int direction(World world) {
+        long tick = world.getTick();
+        while (next < changeTicks.length && changeTicks[next] <= tick) {
+            direction = changeDirections[next];
+            next++;
+        }
+        return direction;
+    }
+
+    // Play the whole session again and return the world it ends with
+    public World run() throws IOException {
+        next = 0;
+        direction = 0;
+        World world = new World(tickRate, seed, difficulty);
+        world.setChart(chart);
+        if (startState.length > 0) {
+            new WorldSnapshot().restore(world, ByteBuffer.wrap(startState));
+        }
+        world.advance((int) (finalTick - startTick), this);
+        return world;
+    }
+
+    // Check that a replayed world ended the way the recording did
+    public boolean matches(World world) {
+        return world.getTick() == finalTick && world.getScore() == finalScore;
+    }
+
+    public long getFinalTick() {
+        return finalTick;
+    }
+
+    public int getFinalScore() {
+        return finalScore;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+            if (shift > 63) {
+                throw new IOException("Malformed number in replay file");
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int repeat = 1;
+        int files = args.length;
+        if (files > 1 && args[files - 1].matches("\\d+")) {
+            repeat = Integer.parseInt(args[files - 1]);
+            files--;
+        }
+
+        int failures = 0;
+        for (int i = 0; i < files; i++) {
+            Replay replay = load(Paths.get(args[i]));
+            long start = System.nanoTime();
+            World world = null;
+            for (int r = 0; r < repeat; r++) {
+                world = replay.run();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            boolean ok = world != null && replay.matches(world);
+            if (!ok) {
+                failures++;
+            }
+            System.out.printf("%s: %s, tick %d score %d (recorded %d/%d), %.0f ticks/s%n",
+                    args[i], ok ? "match" : "MISMATCH",
+                    world == null ? 0 : world.getTick(), world == null ? 0 : world.getScore(),
+                    replay.finalTick, replay.finalScore, replay.finalTick * repeat / seconds);
+        }
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// The RollbackSession class runs one side of a two-player race. Both players play their
+// own world from the same seed, and each side simulates both worlds. The local world is
+// driven by local input straight away, so it feels exactly like the single-player game.
+// The remote world cannot wait for the other player's input to cross the network, so it
+// runs ahead on a prediction (the other player keeps doing what they last did). When
+// their real input arrives and differs from the prediction, the remote world is put back
+// to the state saved before that tick and the ticks since are simulated again with what
+// is now known. States are kept in a ring of compact World.writeState buffers, one per
+// tick, as far back as a rollback may need to go. A game over restarts that player's world
+// with the next seed, on both sides at the same tick.
+public class RollbackSession {
+    // Furthest a rollback can go; the session waits rather than run further ahead of the other side
+    public static final int MAX_ROLLBACK_TICKS = 30;
+
+    // Ticks of input remembered for each player
+    private static final int INPUT_RING = 256;
+    // Most ticks of input sent in one packet
+    private static final int MAX_INPUT_PER_PACKET = 64;
+    private static final byte INPUT = 1;
+
+    // Delivers packets to the other side, without blocking
+    public interface Transport {
+        // Send the remaining bytes of the packet
+        void send(ByteBuffer packet) throws IOException;
+
+        // Put the next packet that has arrived into the buffer, ready to read; false if there is none
+        boolean receive(ByteBuffer into) throws IOException;
+    }
+
+    private final Transport transport;
+    private final World local;
+    private final World remote;
+    private long tick;
+
+    // Local input by tick, and the newest tick the other side has confirmed receiving
+    private final long[] localTicks = new long[INPUT_RING];
+    private final byte[] localDirections = new byte[INPUT_RING];
+    private long localAcked = -1;
+
+    // Remote input by tick, everything up to remoteConfirmed is known
+    private final long[] remoteTicks = new long[INPUT_RING];
+    private final byte[] remoteDirections = new byte[INPUT_RING];
+    private long remoteConfirmed = -1;
+
+    // Remote direction each tick was simulated with, to spot wrong predictions
+    private final long[] usedTicks = new long[INPUT_RING];
+    private final byte[] usedDirections = new byte[INPUT_RING];
+    private long rollbackFrom = Long.MAX_VALUE;
+
+    // Remote world states saved before each tick
+    private final ByteBuffer[] states = new ByteBuffer[MAX_ROLLBACK_TICKS + 2];
+    private final long[] stateTicks = new long[MAX_ROLLBACK_TICKS + 2];
+
+    private final ByteBuffer packet = ByteBuffer.allocate(16 + MAX_INPUT_PER_PACKET);
+
+    // Statistics
+    private long rollbackCount;
+    private long resimulatedTicks;
+    private final LatencyHistogram rollbackTimes = new LatencyHistogram();
+    private long stallCount;
+
+    // Constructor, both sides must use the same tick rate and seed
+    public RollbackSession(int tickRate, long seed, Transport transport) {
+        this.transport = transport;
+        this.local = new World(tickRate, seed);
+        this.remote = new World(tickRate, seed);
+        Arrays.fill(localTicks, -1);
+        Arrays.fill(remoteTicks, -1);
+        Arrays.fill(usedTicks, -1);
+        Arrays.fill(stateTicks, -1);
+        for (int i = 0; i < states.length; i++) {
+            states[i] = ByteBuffer.allocate(remote.stateSize() * 2);
+        }
+    }
+
+    // Run the next tick with the local player's direction. Returns false, without
+    // running it, while the other side is too far behind to roll back to.
+    public boolean advance(int localDirection) throws IOException {
+        poll();
+        if (tick - remoteConfirmed > MAX_ROLLBACK_TICKS) {
+            stallCount++;
+            sendInput();
+            return false;
+        }
+
+        int slot = (int) (tick % INPUT_RING);
+        localTicks[slot] = tick;
+        localDirections[slot] = (byte) localDirection;
+        sendInput();
+
+        step(local, localDirection);
+        simulateRemote();
+        tick++;
+        return true;
+    }
+
+    // Take the packets that have arrived and correct the remote world if a prediction was wrong
+    public void poll() throws IOException {
+        while (transport.receive(packet)) {
+            if (packet.get() == INPUT) {
+                readInput();
+            }
+        }
+        if (rollbackFrom < tick) {
+            rollback();
+        }
+        rollbackFrom = Long.MAX_VALUE;
+    }
+
+    // Take what has arrived and send the local input again if the other side has not
+    // confirmed all of it, for while no ticks are run, such as at the end of a race
+    public void flush() throws IOException {
+        poll();
+        if (localAcked < tick - 1) {
+            sendInput();
+        }
+    }
+
+    private void readInput() {
+        long acked = NetProtocol.getVarInt(packet) - 1L;
+        localAcked = Math.max(localAcked, acked);
+        long first = NetProtocol.getVarInt(packet);
+        int count = NetProtocol.getVarInt(packet);
+        for (int i = 0; i < count; i++) {
+            long inputTick = first + i;
+            byte direction = packet.get();
+            if (inputTick <= remoteConfirmed) {
+                continue;
+            }
+            int slot = (int) (inputTick % INPUT_RING);
+            remoteTicks[slot] = inputTick;
+            remoteDirections[slot] = direction;
+            if (usedTicks[slot] == inputTick && usedDirections[slot] != direction) {
+                rollbackFrom = Math.min(rollbackFrom, inputTick);
+            }
+        }
+        while (remoteTicks[(int) ((remoteConfirmed + 1) % INPUT_RING)] == remoteConfirmed + 1) {
+            remoteConfirmed++;
+        }
+    }
+
+    // Send every local input the other side has not confirmed yet
+    private void sendInput() throws IOException {
+        long last = tick - 1;
+        int newest = (int) (tick % INPUT_RING);
+        if (localTicks[newest] == tick) {
+            last = tick;
+        }
+        long first = Math.max(localAcked + 1, last - MAX_INPUT_PER_PACKET + 1);
+        packet.clear();
+        packet.put(INPUT);
+        NetProtocol.putVarInt(packet, (int) (remoteConfirmed + 1));
+        NetProtocol.putVarInt(packet, (int) Math.max(first, 0));
+        NetProtocol.putVarInt(packet, (int) Math.max(last - first + 1, 0));
+        for (long t = first; t <= last; t++) {
+            packet.put(localDirections[(int) (t % INPUT_RING)]);
+        }
+        packet.flip();
+        transport.send(packet);
+    }
+
+    // Put the remote world back before the first wrong prediction and catch up to the present
+    private void rollback() {
+        long start = System.nanoTime();
+        int slot = (int) (rollbackFrom % states.length);
+        if (stateTicks[slot] != rollbackFrom) {
+            throw new IllegalStateException("No saved state for tick " + rollbackFrom);
+        }
+        ByteBuffer state = states[slot];
+        state.rewind();
+        remote.readState(state);
+        long present = tick;
+        for (tick = rollbackFrom; tick < present; tick++) {
+            simulateRemote();
+            resimulatedTicks++;
+        }
+        rollbackCount++;
+        rollbackTimes.record(System.nanoTime() - start);
+    }
+
+    // Save the remote world and run its next tick with the known or predicted direction
+    private void simulateRemote() {
+        int stateSlot = (int) (tick % states.length);
+        if (states[stateSlot].capacity() < remote.stateSize()) {
+            states[stateSlot] = ByteBuffer.allocate(remote.stateSize() * 2);
+        }
+        ByteBuffer state = states[stateSlot];
+        state.clear();
+        remote.writeState(state);
+        stateTicks[stateSlot] = tick;
+
+        int slot = (int) (tick % INPUT_RING);
+        byte direction = remoteTicks[slot] == tick ? remoteDirections[slot] : predictRemote();
+        usedTicks[slot] = tick;
+        usedDirections[slot] = direction;
+        step(remote, direction);
+    }
+
+    // The other player keeps doing what they did on the last tick we know about
+    private byte predictRemote() {
+        if (remoteConfirmed < 0) {
+            return 0;
+        }
+        return remoteDirections[(int) (remoteConfirmed % INPUT_RING)];
+    }
+
+    private static void step(World world, int direction) {
+        if (world.isGameOver()) {
+            world.reset();
+        }
+        world.applyInput(direction);
+        world.step();
+    }
+
+    public World getLocalWorld() {
+        return local;
+    }
+
+    // The other player's world as best known, up to date on the ticks before getConfirmedTick()
+    public World getRemoteWorld() {
+        return remote;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    // Newest tick up to which the other player's input is known
+    public long getConfirmedTick() {
+        return remoteConfirmed;
+    }
+
+    public long getRollbackCount() {
+        return rollbackCount;
+    }
+
+    public long getResimulatedTicks() {
+        return resimulatedTicks;
+    }
+
+    // Time taken by each rollback, restoring the state and simulating the ticks again
+    public LatencyHistogram getRollbackTimes() {
+        return rollbackTimes;
+    }
+
+    // Ticks skipped because the other side was too far behind
+    public long getStallCount() {
+        return stallCount;
+    }
+
+    // Play a bot race over a simulated network and check both sides agree on both worlds
+    // Usage: java -Djava.awt.headless=true RollbackSession [latency ms] [jitter ms] [loss %] [seconds]
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        long latency = (args.length > 0 ? Long.parseLong(args[0]) : 100) * 1_000_000L;
+        long jitter = (args.length > 1 ? Long.parseLong(args[1]) : 20) * 1_000_000L;
+        double loss = (args.length > 2 ? Double.parseDouble(args[2]) : 5) / 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 60;
+        int tickRate = GameLoop.DEFAULT_TICK_RATE;
+        long tickNanos = 1_000_000_000L / tickRate;
+
+        long[] now = {0};
+        LatencyLoopback[] link = LatencyLoopback.pair(() -> now[0], latency, jitter, loss, 7);
+        RollbackSession a = new RollbackSession(tickRate, 99, link[0]);
+        RollbackSession b = new RollbackSession(tickRate, 99, link[1]);
+        long ticks = (long) seconds * tickRate;
+        for (long i = 0; i < ticks; i++) {
+            a.advance(HeadlessGame.BOT.direction(a.getLocalWorld()));
+            b.advance(HeadlessGame.BOT.direction(b.getLocalWorld()));
+            now[0] += tickNanos;
+        }
+
+        // Bring a stalled side up to the same tick, let the last packets arrive,
+        // and then both sides must agree on both worlds
+        for (int i = 0; i < MAX_ROLLBACK_TICKS * 10; i++) {
+            if (a.getTick() < b.getTick()) {
+                a.advance(HeadlessGame.BOT.direction(a.getLocalWorld()));
+            } else if (b.getTick() < a.getTick()) {
+                b.advance(HeadlessGame.BOT.direction(b.getLocalWorld()));
+            }
+            a.flush();
+            b.flush();
+            now[0] += tickNanos;
+        }
+        boolean agree = a.getTick() == b.getTick()
+                && sameState(a.getLocalWorld(), b.getRemoteWorld())
+                && sameState(b.getLocalWorld(), a.getRemoteWorld());
+
+        System.out.printf("%d s at %d ms latency, %d ms jitter, %.0f%% loss: ticks %d and %d, worlds %s%n",
+                seconds, latency / 1_000_000, jitter / 1_000_000, loss * 100, a.getTick(), b.getTick(),
+                agree ? "agree" : "DIFFER");
+        for (RollbackSession session : new RollbackSession[] {a, b}) {
+            LatencyHistogram times = session.getRollbackTimes();
+            System.out.printf("%d rollbacks of %.1f ticks on average, p50 %.1f us, p99 %.1f us, max %.1f us, %d stalls%n",
+                    session.getRollbackCount(),
+                    (double) session.getResimulatedTicks() / Math.max(1, session.getRollbackCount()),
+                    times.percentile(50) / 1000.0, times.percentile(99) / 1000.0, times.getMax() / 1000.0,
+                    session.getStallCount());
+        }
+    }
+
+    private static boolean sameState(World first, World second) {
+        ByteBuffer one = ByteBuffer.allocate(first.stateSize());
+        ByteBuffer two = ByteBuffer.allocate(second.stateSize());
+        first.writeState(one);
+        second.writeState(two);
+        return one.flip().equals(two.flip());
+    }
+}
@@ -0,0 +1,469 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.midi.ShortMessage;
+
+// The SoftSynth class is a small software synthesizer for the game's notes. The default
+// MIDI synthesizer buffers its output deeply, so a note reaches the speakers well after
+// the bounce that caused it. This one renders 16-bit mono PCM itself, in blocks of a
+// millisecond or two, from wavetables computed once at startup, and writes it to a
+// SourceDataLine whose buffer is only a few milliseconds long. Note events carry the
+// System.nanoTime() they should be heard at; each block starts them on the exact sample
+// that is heard at that time, or on its first sample if they are late. Without a sound
+// device the same code renders into a byte array, so it can be checked headless.
+// Nothing is allocated once the synth is running.
+public class SoftSynth implements Runnable {
+    public static final int SAMPLE_RATE = 44100;
+    // Frames rendered at a time, events land on exact samples within a block
+    public static final int BLOCK_FRAMES = 64;
+    // Line buffer used when none is configured, about 6 ms
+    public static final int DEFAULT_BUFFER_FRAMES = 256;
+    private static final int FRAME_BYTES = 2;
+    private static final double NANOS_PER_FRAME = 1e9 / SAMPLE_RATE;
+
+    // Notes sounding at once, the quietest one is cut when another starts
+    private static final int VOICES = 16;
+    // Wavetable length, a power of two, with one guard sample for interpolation
+    private static final int WAVE_SIZE = 2048;
+    private static final int HARMONICS = 8;
+
+    // Envelope: a short attack against clicks, then a piano-like decay, faster once released
+    private static final int ATTACK_FRAMES = SAMPLE_RATE * 3 / 1000;
+    private static final float DECAY = decayPerFrame(1.2);
+    private static final float RELEASE = decayPerFrame(0.08);
+    private static final float SILENT = 1e-4f;
+    private static final float MASTER_GAIN = 0.3f;
+
+    private static final int ALL_NOTES_OFF = 123;
+
+    // Event ring, filled by one producer thread and emptied by the render thread
+    private static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+    // Events received early wait here until their block
+    private static final int PENDING = 256;
+
+    // Wavetable and the phase step of every MIDI note
+    private final float[] wave = new float[WAVE_SIZE + 1];
+    private final float[] increments = new float[128];
+
+    // Voices, one entry per voice in each array
+    private final int[] voiceNote = new int[VOICES];
+    private final float[] voicePhase = new float[VOICES];
+    private final float[] voiceIncrement = new float[VOICES];
+    private final float[] voiceGain = new float[VOICES];
+    private final float[] voiceLevel = new float[VOICES];
+    private final int[] voiceAttack = new int[VOICES];
+    private final boolean[] voiceReleased = new boolean[VOICES];
+    private final boolean[] voiceActive = new boolean[VOICES];
+
+    private final long[] ringTimes = new long[CAPACITY];
+    private final int[] ringMessages = new int[CAPACITY];
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    private final long[] pendingTimes = new long[PENDING];
+    private final int[] pendingMessages = new int[PENDING];
+    private int pendingCount;
+
+    private final float[] mix = new float[BLOCK_FRAMES];
+
+    // Output, null when rendering into byte arrays only
+    private final SourceDataLine line;
+    private final int bufferFrames;
+    private final byte[] block = new byte[BLOCK_FRAMES * FRAME_BYTES];
+    private volatile boolean running;
+    private Thread thread;
+
+    // Statistics
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final LatencyHistogram renderTimes = new LatencyHistogram();
+    private volatile long lateCount;
+    private volatile long maxLateNanos;
+
+    // Constructor, renders into byte arrays only
+    public SoftSynth() {
+        this(null, 0);
+    }
+
+    private SoftSynth(SourceDataLine line, int bufferFrames) {
+        this.line = line;
+        this.bufferFrames = bufferFrames;
+
+        // A tone with softer upper harmonics, normalised to a peak of 1
+        float peak = 0;
+        for (int i = 0; i < WAVE_SIZE; i++) {
+            double sample = 0;
+            for (int h = 1; h <= HARMONICS; h++) {
+                sample += Math.sin(2 * Math.PI * h * i / WAVE_SIZE) / Math.pow(h, 1.5);
+            }
+            wave[i] = (float) sample;
+            peak = Math.max(peak, Math.abs(wave[i]));
+        }
+        for (int i = 0; i < WAVE_SIZE; i++) {
+            wave[i] /= peak;
+        }
+        wave[WAVE_SIZE] = wave[0];
+        for (int note = 0; note < 128; note++) {
+            double frequency = 440 * Math.pow(2, (note - 69) / 12.0);
+            increments[note] = (float) (frequency * WAVE_SIZE / SAMPLE_RATE);
+        }
+    }
+
+    // Open the default sound device with a line buffer of the given number of frames
+    public static SoftSynth open(int bufferFrames) throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        SourceDataLine line = AudioSystem.getSourceDataLine(format);
+        line.open(format, Math.max(bufferFrames, BLOCK_FRAMES * 2) * FRAME_BYTES);
+        return new SoftSynth(line, line.getBufferSize() / FRAME_BYTES);
+    }
+
+    // Start the render thread, only for a synth with a sound device
+    public synchronized void start() {
+        if (running || line == null) {
+            return;
+        }
+        running = true;
+        line.start();
+        thread = new Thread(this, "SoftSynth");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    // Stop the render thread and close the sound device
+    public synchronized void shutdown() {
+        running = false;
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        if (line != null) {
+            line.close();
+        }
+    }
+
+    // Render and write blocks; the write blocks while the line buffer is full, which paces the loop
+    @Override
+    public void run() {
+        while (running) {
+            // The new block is heard after everything still waiting in the line
+            long queued = bufferFrames - line.available() / FRAME_BYTES;
+            long heardAt = System.nanoTime() + (long) (queued * NANOS_PER_FRAME);
+            render(block, 0, BLOCK_FRAMES, heardAt);
+            line.write(block, 0, block.length);
+        }
+        line.drain();
+        line.stop();
+    }
+
+    // Queue a MIDI channel message (note on, note off, or all notes off) to be heard at the
+    // given System.nanoTime(). Call from one thread only. Returns false if the queue is full.
+    public boolean send(long atNanos, int status, int data1, int data2) {
+        long position = tail.get();
+        if (position - head.get() >= CAPACITY) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        int slot = (int) (position & MASK);
+        ringTimes[slot] = atNanos;
+        ringMessages[slot] = (status << 16) | (data1 << 8) | data2;
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    // Render frames into the array as 16-bit little-endian mono PCM. startNanos is the
+    // System.nanoTime() at which the first frame will be heard.
+    public void render(byte[] out, int offset, int frames, long startNanos) {
+        for (int done = 0; done < frames; done += BLOCK_FRAMES) {
+            long start = System.nanoTime();
+            int count = Math.min(BLOCK_FRAMES, frames - done);
+            renderBlock(count, startNanos + (long) (done * NANOS_PER_FRAME));
+            for (int i = 0; i < count; i++) {
+                float sample = Math.max(-1f, Math.min(1f, mix[i]));
+                int value = (int) (sample * Short.MAX_VALUE);
+                int at = offset + (done + i) * FRAME_BYTES;
+                out[at] = (byte) value;
+                out[at + 1] = (byte) (value >> 8);
+            }
+            renderTimes.record(System.nanoTime() - start);
+        }
+    }
+
+    // Mix one block, starting each due event on its own sample
+    private void renderBlock(int frames, long startNanos) {
+        takeEvents();
+        Arrays.fill(mix, 0, frames, 0f);
+        int cursor = 0;
+        while (true) {
+            // Earliest event that falls inside this block
+            int next = -1;
+            int nextFrame = frames;
+            for (int i = 0; i < pendingCount; i++) {
+                long early = pendingTimes[i] - startNanos;
+                int frame = early <= 0 ? 0 : (int) Math.min(frames, early / NANOS_PER_FRAME);
+                if (frame < nextFrame) {
+                    next = i;
+                    nextFrame = frame;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            mixVoices(cursor, nextFrame);
+            cursor = nextFrame;
+
+            long late = startNanos - pendingTimes[next];
+            if (late > 0) {
+                lateCount++;
+                maxLateNanos = Math.max(maxLateNanos, late);
+            }
+            apply(pendingMessages[next]);
+            pendingCount--;
+            pendingTimes[next] = pendingTimes[pendingCount];
+            pendingMessages[next] = pendingMessages[pendingCount];
+        }
+        mixVoices(cursor, frames);
+    }
+
+    // Move queued events into the pending list
+    private void takeEvents() {
+        long position = head.get();
+        long end = tail.get();
+        while (position < end) {
+            int slot = (int) (position & MASK);
+            if (pendingCount == PENDING) {
+                // Too many waiting, play the event now rather than lose it
+                apply(ringMessages[slot]);
+            } else {
+                pendingTimes[pendingCount] = ringTimes[slot];
+                pendingMessages[pendingCount] = ringMessages[slot];
+                pendingCount++;
+            }
+            position++;
+        }
+        head.lazySet(position);
+    }
+
+    // Add every sounding voice into the mix from one frame up to another
+    private void mixVoices(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        for (int v = 0; v < VOICES; v++) {
+            if (!voiceActive[v]) {
+                continue;
+            }
+            float phase = voicePhase[v];
+            float increment = voiceIncrement[v];
+            float gain = voiceGain[v];
+            float level = voiceLevel[v];
+            int attack = voiceAttack[v];
+            float decay = voiceReleased[v] ? RELEASE : DECAY;
+            for (int i = from; i < to; i++) {
+                int index = (int) phase;
+                float fraction = phase - index;
+                float sample = wave[index] + (wave[index + 1] - wave[index]) * fraction;
+                float envelope = level;
+                if (attack < ATTACK_FRAMES) {
+                    envelope *= (float) attack / ATTACK_FRAMES;
+                    attack++;
+                }
+                mix[i] += sample * envelope * gain;
+                level *= decay;
+                phase += increment;
+                if (phase >= WAVE_SIZE) {
+                    phase -= WAVE_SIZE;
+                }
+            }
+            voicePhase[v] = phase;
+            voiceLevel[v] = level;
+            voiceAttack[v] = attack;
+            if (level < SILENT) {
+                voiceActive[v] = false;
+            }
+        }
+    }
+
+    private void apply(int message) {
+        int status = message >>> 16;
+        int data1 = (message >>> 8) & 0xFF;
+        int data2 = message & 0xFF;
+        if (status == ShortMessage.NOTE_ON && data2 > 0) {
+            noteOn(data1 & 0x7F, data2);
+        } else if (status == ShortMessage.NOTE_OFF || status == ShortMessage.NOTE_ON) {
+            release(data1);
+        } else if (status == ShortMessage.CONTROL_CHANGE && data1 == ALL_NOTES_OFF) {
+            for (int v = 0; v < VOICES; v++) {
+                voiceReleased[v] = true;
+            }
+        }
+    }
+
+    // Start a note on a free voice, or on the quietest one
+    private void noteOn(int note, int velocity) {
+        int voice = 0;
+        for (int v = 0; v < VOICES; v++) {
+            if (!voiceActive[v]) {
+                voice = v;
+                break;
+            }
+            if (voiceLevel[v] < voiceLevel[voice]) {
+                voice = v;
+            }
+        }
+        float loudness = velocity / 127f;
+        voiceNote[voice] = note;
+        voicePhase[voice] = 0;
+        voiceIncrement[voice] = increments[note];
+        voiceGain[voice] = loudness * loudness * MASTER_GAIN;
+        voiceLevel[voice] = 1;
+        voiceAttack[voice] = 0;
+        voiceReleased[voice] = false;
+        voiceActive[voice] = true;
+    }
+
+    private void release(int note) {
+        for (int v = 0; v < VOICES; v++) {
+            if (voiceActive[v] && voiceNote[v] == note) {
+                voiceReleased[v] = true;
+            }
+        }
+    }
+
+    // Level multiplier per frame that takes the envelope down to SILENT over the given seconds
+    private static float decayPerFrame(double seconds) {
+        return (float) Math.exp(Math.log(SILENT) / (seconds * SAMPLE_RATE));
+    }
+
+    // Time from rendering a frame to hearing it, the line buffer plus one block
+    public long getOutputLatencyNanos() {
+        return (long) ((bufferFrames + BLOCK_FRAMES) * NANOS_PER_FRAME);
+    }
+
+    // Notes sounding right now
+    public int getActiveVoices() {
+        int active = 0;
+        for (int v = 0; v < VOICES; v++) {
+            if (voiceActive[v]) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    // Getters for the statistics
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    // Events that arrived after the time they should have been heard
+    public long getLateCount() {
+        return lateCount;
+    }
+
+    public long getMaxLateNanos() {
+        return maxLateNanos;
+    }
+
+    // Time taken to render each block
+    public LatencyHistogram getRenderTimes() {
+        return renderTimes;
+    }
+
+    // Render notes headless and check each starts on the sample it was timed for
+    // Usage: java SoftSynth [buffer frames] [play]
+    public static void main(String[] args) throws LineUnavailableException, InterruptedException {
+        int bufferFrames = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BUFFER_FRAMES;
+        SoftSynth synth = new SoftSynth();
+        int[] notes = {60, 64, 67, 72, 67, 64, 60, 55};
+        int frames = SAMPLE_RATE / 4;
+        byte[] out = new byte[frames * FRAME_BYTES];
+        byte[] silence = new byte[SAMPLE_RATE * FRAME_BYTES];
+
+        // Warm up the JIT
+        for (int round = 0; round < 200; round++) {
+            synth.send(0, ShortMessage.NOTE_ON, notes[round % notes.length], 100);
+            synth.render(out, 0, frames, 0);
+            synth.send(0, ShortMessage.CONTROL_CHANGE, ALL_NOTES_OFF, 0);
+            synth.render(silence, 0, SAMPLE_RATE, 0);
+        }
+        synth.renderTimes.reset();
+
+        // Each note once at the start of a render, as a reference, and once timed
+        // for an odd frame inside a block; the first sound must be just as far apart
+        long start = 1_000_000_000L;
+        int worst = 0;
+        long allocated = 0;
+        // Asking the JVM allocates too, measure that with two calls back to back and
+        // take it off each render
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long bytesBefore = allocatedBytes();
+            overhead = Math.min(overhead, allocatedBytes() - bytesBefore);
+        }
+        for (int i = 0; i < notes.length; i++) {
+            synth.send(start, ShortMessage.NOTE_ON, notes[i], 100);
+            synth.render(out, 0, frames, start);
+            int reference = firstSound(out);
+            synth.send(0, ShortMessage.CONTROL_CHANGE, ALL_NOTES_OFF, 0);
+            synth.render(silence, 0, SAMPLE_RATE, 0);
+
+            int onset = 37 + i * 1001;
+            synth.send(start + (long) Math.ceil(onset * NANOS_PER_FRAME), ShortMessage.NOTE_ON, notes[i], 100);
+            long bytesBefore = allocatedBytes();
+            synth.render(out, 0, frames, start);
+            allocated += Math.max(0, allocatedBytes() - bytesBefore - overhead);
+            worst = Math.max(worst, Math.abs(firstSound(out) - reference - onset));
+            synth.send(0, ShortMessage.CONTROL_CHANGE, ALL_NOTES_OFF, 0);
+            synth.render(silence, 0, SAMPLE_RATE, 0);
+        }
+        LatencyHistogram times = synth.getRenderTimes();
+        System.out.printf("%d notes, onsets within %d frames of their time, %d late%n",
+                notes.length, worst, synth.getLateCount());
+        System.out.printf("block of %d frames (%.2f ms): render p50 %.1f us, p99 %.1f us, max %.1f us, %d bytes allocated%n",
+                BLOCK_FRAMES, BLOCK_FRAMES * NANOS_PER_FRAME / 1e6, times.percentile(50) / 1000.0,
+                times.percentile(99) / 1000.0, times.getMax() / 1000.0, allocated);
+
+        // Play a scale on the sound device
+        if (args.length > 1 && "play".equals(args[1])) {
+            SoftSynth live = SoftSynth.open(bufferFrames);
+            live.start();
+            System.out.printf("Output latency %.1f ms%n", live.getOutputLatencyNanos() / 1e6);
+            for (int note : notes) {
+                long now = System.nanoTime();
+                live.send(now, ShortMessage.NOTE_ON, note, 100);
+                live.send(now + 200_000_000L, ShortMessage.NOTE_OFF, note, 0);
+                Thread.sleep(250);
+            }
+            Thread.sleep(500);
+            System.out.printf("%d late notes, at most %.2f ms late%n", live.getLateCount(), live.getMaxLateNanos() / 1e6);
+            live.shutdown();
+        }
+    }
+
+    // First frame that is not silent, or -1
+    private static int firstSound(byte[] pcm) {
+        for (int i = 0; i < pcm.length; i += FRAME_BYTES) {
+            if (pcm[i] != 0 || pcm[i + 1] != 0) {
+                return i / FRAME_BYTES;
+            }
+        }
+        return -1;
+    }
+
+    // Bytes allocated so far by this thread, or 0 if the JVM cannot tell us
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
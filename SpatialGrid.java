@@ -0,0 +1,155 @@
+import java.util.Arrays;
+
+// The SpatialGrid class is a uniform grid over the playfield that indexes paddles by
+// the cell holding their top-left corner. Paddles tell the grid when they move, so it
+// is kept up to date incrementally, and collision queries only look at the cells
+// around the query rectangle instead of every paddle in the game.
+public class SpatialGrid {
+    // Size of one cell in pixels
+    public static final int CELL_SIZE = 50;
+
+    private final int columns;
+    private final int rows;
+
+    // Paddles in each cell, packed at the front of each array
+    private Paddle[][] cells;
+    private int[] counts;
+    private int size;
+
+    // Size of the paddles, a paddle overlapping a rectangle can start this far before it
+    private int paddleWidth = Paddle.DEFAULT_WIDTH;
+    private int paddleHeight = Paddle.HEIGHT;
+
+    // Reusable buffer for query results
+    private Paddle[] results = new Paddle[16];
+
+    // Constructor
+    public SpatialGrid(int width, int height) {
+        columns = width / CELL_SIZE + 1;
+        rows = height / CELL_SIZE + 1;
+        cells = new Paddle[columns * rows][];
+        counts = new int[columns * rows];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new Paddle[4];
+        }
+    }
+
+    // Add a paddle to the grid
+    public void insert(Paddle paddle) {
+        int cell = cellOf(paddle.getX(), paddle.getY());
+        add(paddle, cell);
+        paddle.setGrid(this);
+        size++;
+    }
+
+    // Remove a paddle from the grid
+    public void remove(Paddle paddle) {
+        if (paddle.getGrid() != this) {
+            return;
+        }
+        removeFromCell(paddle);
+        paddle.setGrid(null);
+        size--;
+    }
+
+    // Called by a paddle after it moved, moves it to its new cell if needed
+    public void update(Paddle paddle) {
+        int cell = cellOf(paddle.getX(), paddle.getY());
+        if (cell != paddle.getGridCell()) {
+            removeFromCell(paddle);
+            add(paddle, cell);
+        }
+    }
+
+    // Tell the grid how big its paddles are, queries widen by this much
+    public void setPaddleSize(int width, int height) {
+        paddleWidth = width;
+        paddleHeight = height;
+    }
+
+    // Remove every paddle
+    public void clear() {
+        for (int cell = 0; cell < cells.length; cell++) {
+            for (int i = 0; i < counts[cell]; i++) {
+                cells[cell][i].setGrid(null);
+                cells[cell][i] = null;
+            }
+            counts[cell] = 0;
+        }
+        size = 0;
+    }
+
+    // Find the paddles that may overlap the given rectangle. Returns the number of
+    // candidates, which are read back with result(i) until the next query.
+    public int query(int x, int y, int width, int height) {
+        // A paddle's top-left corner can be up to one paddle size above or left of
+        // the rectangle and still overlap it
+        int firstColumn = column(x - paddleWidth);
+        int lastColumn = column(x + width);
+        int firstRow = row(y - paddleHeight);
+        int lastRow = row(y + height);
+
+        int found = 0;
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                int cell = r * columns + c;
+                Paddle[] paddles = cells[cell];
+                for (int i = 0; i < counts[cell]; i++) {
+                    if (found == results.length) {
+                        results = Arrays.copyOf(results, found * 2);
+                    }
+                    results[found++] = paddles[i];
+                }
+            }
+        }
+        return found;
+    }
+
+    // Candidate number i of the last query
+    public Paddle result(int i) {
+        return results[i];
+    }
+
+    // Number of paddles in the grid
+    public int size() {
+        return size;
+    }
+
+    private void add(Paddle paddle, int cell) {
+        Paddle[] paddles = cells[cell];
+        int count = counts[cell];
+        if (count == paddles.length) {
+            paddles = Arrays.copyOf(paddles, count * 2);
+            cells[cell] = paddles;
+        }
+        paddles[count] = paddle;
+        counts[cell] = count + 1;
+        paddle.setGridCell(cell, count);
+    }
+
+    // Swap the last paddle of the cell into the removed paddle's slot
+    private void removeFromCell(Paddle paddle) {
+        int cell = paddle.getGridCell();
+        int slot = paddle.getGridSlot();
+        Paddle[] paddles = cells[cell];
+        int last = --counts[cell];
+        Paddle moved = paddles[last];
+        paddles[slot] = moved;
+        paddles[last] = null;
+        if (moved != paddle) {
+            moved.setGridCell(cell, slot);
+        }
+    }
+
+    private int cellOf(int x, int y) {
+        return row(y) * columns + column(x);
+    }
+
+    private int column(int x) {
+        return Math.max(0, Math.min(columns - 1, Math.floorDiv(x, CELL_SIZE)));
+    }
+
+    private int row(int y) {
+        return Math.max(0, Math.min(rows - 1, Math.floorDiv(y, CELL_SIZE)));
+    }
+}
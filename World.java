@@ -0,0 +1,707 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+// The World class holds the whole game simulation: the player, the paddles and the
+// power-ups. It does not depend on Swing or MIDI, so it can be stepped without a
+// display or a sound device, as fast as the CPU allows.
+public class World {
+    // Size of the game area
+    public static final int WIDTH = 800;
+    public static final int HEIGHT = 600;
+
+    // Number of paddles placed at the start of a game
+    private static final int NUM_PADDLES = 15;
+
+    // Chart paddles cross this line on the beat, and are at least this far apart in time
+    private static final int BEAT_LINE_Y = HEIGHT * 2 / 3;
+    private static final int CHART_SPAWN_GAP_MILLIS = 250;
+
+    // Sizes of the parts of a saved game, in bytes
+    private static final int STATE_HEADER_BYTES = 96;
+    private static final int PLAYER_STATE_BYTES = 48;
+    private static final int PADDLE_STATE_BYTES = 21;
+    private static final int POWER_UP_STATE_BYTES = 20;
+    private static final int EFFECT_STATE_BYTES = 14;
+    // Exact sizes of the fields from the tick rate to the next beat, and of the player
+    private static final int SAVED_FIELDS_BYTES = 77;
+    private static final int SAVED_PLAYER_BYTES = 45;
+
+    // Owner of saved effects, only the player has timed effects
+    private static final byte PLAYER_EFFECT = 0;
+
+    // Random streams derived from the session seed
+    private static final int PADDLE_STREAM = 1;
+    private static final int POWER_UP_STREAM = 2;
+
+    // Receives the things the simulation wants the outside world to react to
+    public interface Events {
+        Events NONE = new Events() {};
+
+        // The player bounced off a paddle
+        default void bounce(Player player) {}
+
+        // The player picked up a power-up, which is about to go back to the pool
+        default void powerUpCollected(Player player, PowerUp powerUp) {}
+
+        // The player fell off the bottom of the screen
+        default void gameOver(Player player) {}
+
+        // The game moved to another level, only sent when it changes, and on reset or restore
+        default void levelChanged(int level, Difficulty.Level settings) {}
+    }
+
+    // Supplies the player's horizontal direction (-1, 0 or 1) before each tick
+    public interface Input {
+        int direction(World world);
+    }
+
+    // Simulation rate and the game time that passes in one tick
+    private final int tickRate;
+    private final Difficulty difficulty;
+    private final EffectScheduler effects;
+    private Events events = Events.NONE;
+
+    // Game state
+    private Player player;
+    private final ArrayList<Paddle> paddleList = new ArrayList<>();
+    private final ArrayList<PowerUp> powerUps = new ArrayList<>();
+    private final SpatialGrid grid = new SpatialGrid(WIDTH, HEIGHT);
+    private final EntityManager entities = new EntityManager();
+    private final GameRandom paddleRandom = new GameRandom(0);
+    private final GameRandom powerUpRandom = new GameRandom(0);
+    private long seed;
+    private long tick;
+
+    // Song that spawns extra paddles on its beats, and the position in it
+    private Chart chart;
+    private int chartIndex;
+    private long chartStartTick;
+    private long nextBeat;
+
+    // Buffer and effect count used while writing a saved game
+    private ByteBuffer saving;
+    private int savedEffects;
+    private final EffectScheduler.Visitor effectWriter = this::writeEffect;
+    private boolean gameOver;
+    private int level;
+    private Difficulty.Level levelSettings;
+    private int levelScore;
+    private int nextLevelScore;
+    private int paddleWidth;
+    private int lastPowerUpScore;
+    private boolean powerUpExists;
+
+    // Constructor, the first game uses a seed taken from the clock
+    public World(int tickRate) {
+        this(tickRate, System.nanoTime());
+    }
+
+    // Constructor, the first game uses the given seed
+    public World(int tickRate, long seed) {
+        this(tickRate, seed, Difficulty.STANDARD);
+    }
+
+    // Constructor, with the given difficulty curve
+    public World(int tickRate, long seed, Difficulty difficulty) {
+        this.tickRate = tickRate;
+        this.difficulty = difficulty;
+        this.effects = new EffectScheduler(tickRate);
+        reset(seed);
+    }
+
+    // Start a new game with the seed that follows the current one
+    public void reset() {
+        reset(GameRandom.nextSeed(seed));
+    }
+
+    // Start a new game, the same seed and input always play out the same way
+    public void reset(long seed) {
+        this.seed = seed;
+        paddleRandom.seed(seed, PADDLE_STREAM);
+        powerUpRandom.seed(seed, POWER_UP_STREAM);
+        player = new Player(WIDTH / 2 - Player.SIZE / 2, 0, 0, 1);
+        player.setEvents(events);
+        player.setEffects(effects);
+        effects.clear();
+        grid.clear();
+        for (Paddle paddle : paddleList) {
+            entities.releasePaddle(paddle);
+        }
+        paddleList.clear();
+        clearPowerUps();
+        tick = 0;
+        gameOver = false;
+        lastPowerUpScore = 0;
+        chartIndex = 0;
+        chartStartTick = 0;
+        nextBeat = 0;
+        changeLevel(0);
+
+        initializePaddles();
+        Paddle.firstPaddle(this);
+    }
+
+    // Initialize paddles at random positions
+    private void initializePaddles() {
+        int spacing = HEIGHT / (NUM_PADDLES + 1); // calculate the spacing between the paddles
+
+        for (int i = 0; i < NUM_PADDLES; i++) {
+            int y = spacing * (i + 1) - Paddle.HEIGHT / 2; // calculate the y-coordinate of the paddle
+            int x = paddleRandom.nextInt(WIDTH - paddleWidth); // generate a random x-coordinate
+            spawnPaddle(x, y);
+        }
+    }
+
+    // Take a paddle from the pool and put it in the game, returns null at the cap
+    public Paddle spawnPaddle(int x, int y) {
+        Paddle paddle = entities.obtainPaddle(x, y);
+        if (paddle != null) {
+            paddleList.add(paddle);
+            adopt(paddle);
+        }
+        return paddle;
+    }
+
+    // Add a paddle created elsewhere to the game, the cap does not apply
+    public void addPaddle(Paddle paddle) {
+        entities.adoptPaddle(paddle);
+        paddleList.add(paddle);
+        adopt(paddle);
+    }
+
+    // Hook a paddle up to the grid and the random stream
+    private void adopt(Paddle paddle) {
+        paddle.setPWidth(paddleWidth);
+        grid.insert(paddle);
+        paddle.setRandom(paddleRandom);
+    }
+
+    // Change the width of every paddle, now and for the ones spawned later
+    private void setPaddleWidth(int width) {
+        if (width == paddleWidth) {
+            return;
+        }
+        paddleWidth = width;
+        for (Paddle paddle : paddleList) {
+            paddle.setPWidth(width);
+        }
+        grid.setPaddleSize(width, Paddle.HEIGHT);
+    }
+
+    // Take a power-up from the pool and put it in the game, returns null at the cap
+    private PowerUp spawnPowerUp(int x, int y) {
+        PowerUp powerUp = entities.obtainPowerUp(x, y);
+        if (powerUp != null) {
+            powerUp.setRandom(powerUpRandom);
+            powerUps.add(powerUp);
+        }
+        return powerUp;
+    }
+
+    // Adopt paddles that were added to the list directly
+    private void syncGrid() {
+        if (grid.size() != paddleList.size()) {
+            for (Paddle paddle : paddleList) {
+                if (paddle.getGrid() != grid) {
+                    entities.adoptPaddle(paddle);
+                    adopt(paddle);
+                }
+            }
+        }
+    }
+
+    // Apply a horizontal direction to the player
+    public void applyInput(int direction) {
+        if (direction < 0) {
+            player.moveLeft();
+        } else if (direction > 0) {
+            player.moveRight();
+        } else {
+            player.stopMoving();
+        }
+    }
+
+    // Advance the game by one fixed step
+    public void step() {
+        if (gameOver) {
+            return;
+        }
+        tick++;
+        syncGrid();
+
+        int score = player.getScore();
+        boolean gameJustStarted = score == 0;
+
+        effects.advance();
+        player.savePosition();
+        player.applyGravity();
+        player.move();
+
+        // Spawn paddles for the notes of the chart that are due
+        spawnChartPaddles();
+
+        // Move paddles, the grid follows them as they move. Chart paddles that
+        // left the bottom go back to the pool, the rest keep their order.
+        int kept = 0;
+        for (int i = 0; i < paddleList.size(); i++) {
+            Paddle paddle = paddleList.get(i);
+            paddle.savePosition();
+            paddle.moveDown(HEIGHT, WIDTH);
+            if (paddle.hasLeft(HEIGHT)) {
+                grid.remove(paddle);
+                entities.releasePaddle(paddle);
+            } else {
+                paddleList.set(kept++, paddle);
+            }
+        }
+        while (paddleList.size() > kept) {
+            paddleList.remove(paddleList.size() - 1);
+        }
+
+        // Check collisions with the paddles near the player
+        int candidates = grid.query(player.getX(), player.getY(), Player.SIZE, Player.SIZE);
+        for (int i = 0; i < candidates; i++) {
+            if (player.isCollidingWithPaddle(grid.result(i))) {
+                player.handleCollision();
+            }
+        }
+
+        // Check if player is out of bounds
+        if (player.isOutOfBounds(HEIGHT)) {
+            gameOver = true;
+            events.gameOver(player);
+            return;
+        }
+
+        // Handle player going off screen
+        if (player.wentoffscreenLeft()) {
+            player.setX(WIDTH);
+        }
+        if (player.wentoffscreenRight(WIDTH)) {
+            player.setX(0);
+        }
+
+        // When spawning a power-up
+        if (PowerUp.shouldSpawn(score, levelSettings.getPowerUpCadence(), gameJustStarted, powerUpExists)) {
+            int x = powerUpRandom.nextInt(WIDTH);
+            int y = powerUpRandom.nextInt(HEIGHT);
+            if (spawnPowerUp(x, y) != null) {
+                powerUpExists = true;
+            }
+        }
+
+        // Handle power-ups
+        Iterator<PowerUp> iterator = powerUps.iterator();
+        while (iterator.hasNext()) {
+            PowerUp currentPowerUp = iterator.next();
+            if (currentPowerUp.isCollidingWithPlayer(player)) {
+                player.addScore(15);
+                player.speedUp();
+                iterator.remove();
+                events.powerUpCollected(player, currentPowerUp);
+                entities.releasePowerUp(currentPowerUp);
+                powerUpExists = false; // Set powerUpExists to false when the power-up is collected
+                continue;
+            }
+            currentPowerUp.savePosition();
+            currentPowerUp.move();
+        }
+
+        // Update game state based on player score
+        updateGameState();
+    }
+
+    // Play the given song from the current tick, or stop playing one with null
+    public void setChart(Chart chart) {
+        this.chart = chart;
+        chartIndex = 0;
+        chartStartTick = tick;
+        nextBeat = 0;
+    }
+
+    public Chart getChart() {
+        return chart;
+    }
+
+    // Spawn paddles so they cross the beat line exactly on the chart's beats. A paddle is
+    // placed as soon as its beat is close enough to fall to the line in time; beats with
+    // no note on them get no paddle, and its position across the screen follows the pitch.
+    private void spawnChartPaddles() {
+        if (chart == null || chart.size() == 0 || chart.getMicrosPerBeat() <= 0) {
+            return;
+        }
+        long beatMicros = chart.getMicrosPerBeat();
+        long stride = Math.max(1, (CHART_SPAWN_GAP_MILLIS * 1000L + beatMicros - 1) / beatMicros);
+        long fallTicks = BEAT_LINE_Y / Paddle.NORMAL_SPEED;
+        while (true) {
+            long beatTick = chartStartTick + Math.round(nextBeat * beatMicros * tickRate / 1e6);
+            if (beatTick - fallTicks > tick) {
+                return;
+            }
+
+            // Start the song again once it is over
+            long micros = nextBeat * beatMicros;
+            if (micros > chart.getLengthMicros()) {
+                chartStartTick = Math.max(beatTick, tick);
+                chartIndex = 0;
+                nextBeat = 0;
+                continue;
+            }
+
+            int note = noteOnBeat(micros, beatMicros / 2);
+            if (note >= 0 && nextBeat % stride == 0 && beatTick >= tick) {
+                // The paddle moves once more in this step before it is drawn
+                int y = BEAT_LINE_Y - Paddle.NORMAL_SPEED * (int) (beatTick - tick + 1);
+                int range = Math.max(1, chart.getHighestNote() - chart.getLowestNote());
+                int x = (note - chart.getLowestNote()) * (WIDTH - paddleWidth) / range;
+                Paddle paddle = spawnPaddle(x, y);
+                if (paddle != null) {
+                    paddle.setLeavesAtBottom(true);
+                }
+            }
+            nextBeat++;
+        }
+    }
+
+    // The first chart note within the window around the given time, or -1 if there is none
+    private int noteOnBeat(long micros, long window) {
+        while (chartIndex < chart.size() && chart.getStartMicros(chartIndex) < micros - window) {
+            chartIndex++;
+        }
+        if (chartIndex < chart.size() && chart.getStartMicros(chartIndex) <= micros + window) {
+            return chart.getNote(chartIndex);
+        }
+        return -1;
+    }
+
+    // Run up to the given number of ticks, stopping early on game over.
+    // Returns the number of ticks actually run.
+    public int advance(int ticks, Input input) {
+        for (int i = 0; i < ticks; i++) {
+            if (gameOver) {
+                return i;
+            }
+            if (input != null) {
+                applyInput(input.direction(this));
+            }
+            step();
+        }
+        return ticks;
+    }
+
+    private void updateGameState() {
+        int score = player.getScore();
+
+        // Spawn a power-up every few points
+        if ((score - lastPowerUpScore) % levelSettings.getPowerUpCadence() == 0 && score != 0) {
+            spawnPowerUp(powerUpRandom.nextInt(WIDTH), 0);
+            lastPowerUpScore = score;
+        }
+
+        // Adjust game difficulty when the score leaves the current level
+        if (score >= nextLevelScore || score < levelScore) {
+            changeLevel(difficulty.levelFor(score));
+        }
+    }
+
+    // Apply a level from the table and tell the listeners about it
+    private void changeLevel(int newLevel) {
+        level = newLevel;
+        levelSettings = difficulty.getLevel(newLevel);
+        levelScore = levelSettings.getMinScore();
+        nextLevelScore = difficulty.nextLevelScore(newLevel);
+        setPaddleWidth(levelSettings.getPaddleWidth());
+        events.levelChanged(level, levelSettings);
+    }
+
+    // Returns the paddle the player is currently touching, or null
+    public Paddle getPaddleCollidingWithPlayer() {
+        syncGrid();
+        int candidates = grid.query(player.getX(), player.getY(), Player.SIZE, Player.SIZE);
+        for (int i = 0; i < candidates; i++) {
+            Paddle paddle = grid.result(i);
+            if (player.isCollidingWithPaddle(paddle)) {
+                return paddle;
+            }
+        }
+        return null;
+    }
+
+    public SpatialGrid getGrid() {
+        return grid;
+    }
+
+    public EffectScheduler getEffects() {
+        return effects;
+    }
+
+    // Largest number of bytes writeState can need for the current game
+    public int stateSize() {
+        return STATE_HEADER_BYTES + PLAYER_STATE_BYTES
+                + paddleList.size() * PADDLE_STATE_BYTES
+                + powerUps.size() * POWER_UP_STATE_BYTES
+                + effects.getPendingCount() * EFFECT_STATE_BYTES;
+    }
+
+    // Write the whole game state, including random streams and pending effects
+    public void writeState(ByteBuffer buffer) {
+        syncGrid();
+        buffer.putInt(tickRate);
+        buffer.putLong(seed);
+        buffer.putLong(tick);
+        buffer.putLong(effects.getTick());
+        buffer.putLong(paddleRandom.getState());
+        buffer.putLong(powerUpRandom.getState());
+        buffer.putInt(level);
+        buffer.putInt(lastPowerUpScore);
+        buffer.putInt(paddleWidth);
+        buffer.put((byte) ((gameOver ? 1 : 0) | (powerUpExists ? 2 : 0)));
+        buffer.putInt(chartIndex);
+        buffer.putLong(chartStartTick);
+        buffer.putLong(nextBeat);
+        player.writeState(buffer);
+
+        buffer.putInt(paddleList.size());
+        for (Paddle paddle : paddleList) {
+            paddle.writeState(buffer);
+        }
+        buffer.putInt(powerUps.size());
+        for (PowerUp powerUp : powerUps) {
+            powerUp.writeState(buffer);
+        }
+
+        // Effects that do not belong to the player cannot be saved
+        int countAt = buffer.position();
+        buffer.putInt(0);
+        saving = buffer;
+        savedEffects = 0;
+        effects.forEachPending(effectWriter);
+        saving = null;
+        buffer.putInt(countAt, savedEffects);
+    }
+
+    private void writeEffect(long deadline, EffectScheduler.Effect effect) {
+        if (!(effect instanceof EffectScheduler.Owned)) {
+            return;
+        }
+        EffectScheduler.Owned owned = (EffectScheduler.Owned) effect;
+        if (owned.getOwner() != player) {
+            return;
+        }
+        saving.put(PLAYER_EFFECT).putInt(0);
+        saving.put((byte) owned.getCode()).putLong(deadline);
+        savedEffects++;
+    }
+
+    // Replace the game with one written by writeState. Events and the player object are kept.
+    // Throws IllegalArgumentException, with the world unchanged, if the buffer does not
+    // hold a whole game for this world.
+    public void readState(ByteBuffer buffer) {
+        checkState(buffer.duplicate());
+        buffer.getInt();
+        seed = buffer.getLong();
+        tick = buffer.getLong();
+        long effectTick = buffer.getLong();
+        long paddleState = buffer.getLong();
+        long powerUpState = buffer.getLong();
+        int savedLevel = buffer.getInt();
+        lastPowerUpScore = buffer.getInt();
+        int savedWidth = buffer.getInt();
+        changeLevel(Math.min(savedLevel, difficulty.getLevelCount() - 1));
+        setPaddleWidth(savedWidth);
+        int flags = buffer.get();
+        gameOver = (flags & 1) != 0;
+        powerUpExists = (flags & 2) != 0;
+        chartIndex = buffer.getInt();
+        chartStartTick = buffer.getLong();
+        nextBeat = buffer.getLong();
+        if (chart == null || chartIndex > chart.size()) {
+            chartIndex = 0;
+        }
+        player.readState(buffer);
+
+        // Put the current entities back in the pools and take out as many as were saved
+        effects.clearAt(effectTick);
+        grid.clear();
+        for (Paddle paddle : paddleList) {
+            entities.releasePaddle(paddle);
+        }
+        paddleList.clear();
+        for (PowerUp powerUp : powerUps) {
+            entities.releasePowerUp(powerUp);
+        }
+        powerUps.clear();
+
+        int paddleCount = buffer.getInt();
+        for (int i = 0; i < paddleCount; i++) {
+            Paddle paddle = entities.obtainPaddle(0, 0);
+            if (paddle == null) {
+                paddle = new Paddle(0, 0);
+                entities.adoptPaddle(paddle);
+            }
+            paddle.readState(buffer);
+            paddleList.add(paddle);
+            adopt(paddle);
+        }
+        int powerUpCount = buffer.getInt();
+        for (int i = 0; i < powerUpCount; i++) {
+            PowerUp powerUp = spawnPowerUp(0, 0);
+            if (powerUp == null) {
+                powerUp = new PowerUp(0, 0);
+                entities.adoptPowerUp(powerUp);
+                powerUp.setRandom(powerUpRandom);
+                powerUps.add(powerUp);
+            }
+            powerUp.readState(buffer);
+        }
+
+        int effectCount = buffer.getInt();
+        for (int i = 0; i < effectCount; i++) {
+            buffer.get();
+            buffer.getInt();
+            int code = buffer.get();
+            long deadline = buffer.getLong();
+            effects.scheduleAt(deadline, player.getEffect(code));
+        }
+
+        // Set the random streams last, spawning the entities above used them
+        paddleRandom.setState(paddleState);
+        powerUpRandom.setState(powerUpState);
+    }
+
+    // Walk through a saved game without changing anything, checking it is all there
+    private void checkState(ByteBuffer in) {
+        require(in, SAVED_FIELDS_BYTES + SAVED_PLAYER_BYTES + 4);
+        int savedTickRate = in.getInt();
+        if (savedTickRate != tickRate) {
+            throw new IllegalArgumentException("Saved game runs at " + savedTickRate
+                    + " ticks per second, this world at " + tickRate);
+        }
+        int start = in.position() - 4;
+        int savedLevel = in.getInt(start + 44);
+        int savedWidth = in.getInt(start + 52);
+        if (savedLevel < 0 || savedWidth <= 0 || savedWidth >= WIDTH) {
+            throw new IllegalArgumentException("Saved game has level " + savedLevel + " and paddle width " + savedWidth);
+        }
+        in.position(start + SAVED_FIELDS_BYTES + SAVED_PLAYER_BYTES);
+
+        int paddleCount = count(in, PADDLE_STATE_BYTES);
+        in.position(in.position() + paddleCount * PADDLE_STATE_BYTES);
+        int powerUpCount = count(in, POWER_UP_STATE_BYTES);
+        in.position(in.position() + powerUpCount * POWER_UP_STATE_BYTES);
+        int effectCount = count(in, EFFECT_STATE_BYTES);
+        for (int i = 0; i < effectCount; i++) {
+            byte owner = in.get();
+            in.getInt();
+            int code = in.get();
+            in.getLong();
+            if (owner != PLAYER_EFFECT) {
+                throw new IllegalArgumentException("Saved game has a damaged effect");
+            }
+            player.getEffect(code);
+        }
+    }
+
+    // Read a count of records of the given size and check they are all there
+    private static int count(ByteBuffer in, int recordBytes) {
+        require(in, 4);
+        int count = in.getInt();
+        if (count < 0 || (long) count * recordBytes > in.remaining()) {
+            throw new IllegalArgumentException("Saved game is truncated");
+        }
+        return count;
+    }
+
+    private static void require(ByteBuffer in, int bytes) {
+        if (in.remaining() < bytes) {
+            throw new IllegalArgumentException("Saved game is truncated");
+        }
+    }
+
+    // Remove every power-up, giving them back to the pool
+    public void clearPowerUps() {
+        for (PowerUp powerUp : powerUps) {
+            entities.releasePowerUp(powerUp);
+        }
+        powerUps.clear();
+        powerUpExists = false;
+    }
+
+    // Seed of the current game
+    public long getSeed() {
+        return seed;
+    }
+
+    public GameRandom getPaddleRandom() {
+        return paddleRandom;
+    }
+
+    public GameRandom getPowerUpRandom() {
+        return powerUpRandom;
+    }
+
+    public EntityManager getEntities() {
+        return entities;
+    }
+
+    // Paddles the pool thinks are live but the world does not hold, should be 0
+    public int getLeakedPaddles() {
+        return entities.getLivePaddles() - paddleList.size();
+    }
+
+    // Power-ups the pool thinks are live but the world does not hold, should be 0
+    public int getLeakedPowerUps() {
+        return entities.getLivePowerUps() - powerUps.size();
+    }
+
+    public void setEvents(Events events) {
+        this.events = events == null ? Events.NONE : events;
+        player.setEvents(this.events);
+    }
+
+    // Getters
+    public Player getPlayer() {
+        return player;
+    }
+
+    public ArrayList<Paddle> getPaddleList() {
+        return paddleList;
+    }
+
+    public ArrayList<PowerUp> getPowerUps() {
+        return powerUps;
+    }
+
+    public int getScore() {
+        return player.getScore();
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Difficulty.Level getLevelSettings() {
+        return levelSettings;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getPaddleWidth() {
+        return paddleWidth;
+    }
+
+    public Difficulty getDifficulty() {
+        return difficulty;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+}
@@ -0,0 +1,239 @@
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// The WorldHost class runs many independent games in one process, for example bot games
+// or arcade games played over the network. Every game is a World with its own input and
+// is ticked in real time at its own tick rate. The games are spread over a fixed pool of
+// threads; each thread steps all of its games that are due, back to back, and then sleeps
+// until the next one is due, the way GameLoop does for a single game. Nothing is shared
+// between games, so they never wait for each other.
+// Usage: java -Djava.awt.headless=true WorldHost [sessions] [seconds] [threads]
+public class WorldHost {
+    // Maximum number of ticks a game runs back to back before its backlog is dropped
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    // Longest a thread sleeps, so new games start promptly
+    private static final long MAX_SLEEP_NANOS = 5_000_000L;
+
+    // One game on the host. Other threads must hold the session's lock while they read the world.
+    public static final class Session {
+        private final World world;
+        private final World.Input input;
+        private final boolean restart;
+        private final long tickNanos;
+        private long nextTickNanos;
+        private volatile boolean stopped;
+
+        // Statistics, written by the host thread only
+        private volatile long tickCount;
+        private volatile long droppedTickCount;
+        private volatile long gameCount;
+        private volatile int bestScore;
+
+        Session(World world, World.Input input, boolean restart) {
+            this.world = world;
+            this.input = input;
+            this.restart = restart;
+            this.tickNanos = 1_000_000_000L / world.getTickRate();
+            this.nextTickNanos = System.nanoTime();
+        }
+
+        // Advance the game by one tick, returns false once it is over for good
+        private synchronized boolean tick() {
+            world.advance(1, input);
+            tickCount++;
+            if (world.isGameOver()) {
+                gameCount++;
+                bestScore = Math.max(bestScore, world.getScore());
+                if (!restart) {
+                    return false;
+                }
+                world.reset();
+            }
+            return true;
+        }
+
+        public World getWorld() {
+            return world;
+        }
+
+        // Remove the game from the host before its next tick
+        public void stop() {
+            stopped = true;
+        }
+
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        public long getTickCount() {
+            return tickCount;
+        }
+
+        public long getDroppedTickCount() {
+            return droppedTickCount;
+        }
+
+        // Games that ended, including the ones restarted since
+        public long getGameCount() {
+            return gameCount;
+        }
+
+        public int getBestScore() {
+            return bestScore;
+        }
+    }
+
+    private final Shard[] shards;
+    private final ExecutorService executor;
+    private volatile boolean running = true;
+
+    // Constructor, starts the given number of host threads
+    public WorldHost(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "WorldHost-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        shards = new Shard[threads];
+        for (int i = 0; i < threads; i++) {
+            shards[i] = new Shard();
+            executor.execute(shards[i]);
+        }
+    }
+
+    // Start running a game on the least busy thread. A restarted game starts over with
+    // the next seed when it ends, otherwise the session stops.
+    public Session start(World world, World.Input input, boolean restartOnGameOver) {
+        if (!running) {
+            throw new IllegalStateException("Host has been shut down");
+        }
+        Session session = new Session(world, input, restartOnGameOver);
+        Shard shard = shards[0];
+        for (Shard candidate : shards) {
+            if (candidate.load.get() < shard.load.get()) {
+                shard = candidate;
+            }
+        }
+        shard.load.incrementAndGet();
+        shard.added.add(session);
+        LockSupport.unpark(shard.thread);
+        return session;
+    }
+
+    // Stop every game and the host threads
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    // Number of games running or about to start
+    public int getSessionCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            count += shard.load.get();
+        }
+        return count;
+    }
+
+    // The games of one host thread
+    private final class Shard implements Runnable {
+        private final ConcurrentLinkedQueue<Session> added = new ConcurrentLinkedQueue<>();
+        private final ArrayList<Session> sessions = new ArrayList<>();
+        private final AtomicInteger load = new AtomicInteger();
+        private volatile Thread thread;
+
+        @Override
+        public void run() {
+            thread = Thread.currentThread();
+            while (running) {
+                Session session;
+                while ((session = added.poll()) != null) {
+                    sessions.add(session);
+                }
+
+                long now = System.nanoTime();
+                long wake = now + MAX_SLEEP_NANOS;
+                int kept = 0;
+                for (int i = 0; i < sessions.size(); i++) {
+                    session = sessions.get(i);
+                    if (step(session, now)) {
+                        sessions.set(kept++, session);
+                        wake = Math.min(wake, session.nextTickNanos);
+                    } else {
+                        load.decrementAndGet();
+                    }
+                }
+                sessions.subList(kept, sessions.size()).clear();
+
+                long sleep = wake - System.nanoTime();
+                if (sleep > 0 && added.isEmpty()) {
+                    LockSupport.parkNanos(this, sleep);
+                }
+            }
+        }
+
+        // Run the ticks a game is due, returns false once it should leave the host
+        private boolean step(Session session, long now) {
+            int steps = 0;
+            while (now - session.nextTickNanos >= 0) {
+                if (session.stopped || !session.tick()) {
+                    session.stopped = true;
+                    return false;
+                }
+                session.nextTickNanos += session.tickNanos;
+
+                // Too far behind, drop the backlog instead of spiralling
+                if (++steps >= MAX_CATCH_UP_TICKS && now - session.nextTickNanos >= 0) {
+                    long dropped = (now - session.nextTickNanos) / session.tickNanos + 1;
+                    session.droppedTickCount += dropped;
+                    session.nextTickNanos += dropped * session.tickNanos;
+                }
+            }
+            return !session.stopped;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int tickRate = GameLoop.DEFAULT_TICK_RATE;
+
+        WorldHost host = new WorldHost(threads);
+        Session[] sessions = new Session[count];
+        for (int i = 0; i < count; i++) {
+            sessions[i] = host.start(new World(tickRate, GameRandom.nextSeed(i)), HeadlessGame.BOT, true);
+        }
+        Thread.sleep(seconds * 1000L);
+        host.shutdown();
+
+        long ticks = 0;
+        long dropped = 0;
+        long games = 0;
+        int best = 0;
+        for (Session session : sessions) {
+            ticks += session.getTickCount();
+            dropped += session.getDroppedTickCount();
+            games += session.getGameCount();
+            best = Math.max(best, session.getBestScore());
+        }
+        long expected = (long) count * tickRate * seconds;
+        System.out.printf("%d bot games on %d threads for %d s: %d ticks (%.1f%% of real time), %d dropped%n",
+                count, threads, seconds, ticks, 100.0 * ticks / expected, dropped);
+        System.out.println(games + " games played, best score " + best);
+    }
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// The WorldSnapshot class saves and restores a whole game: the player, every paddle
+// and power-up, pending effects, the level and the random streams. The state is written
+// into one reusable buffer, so taking a snapshot does not allocate once the buffer is big
+// enough. Files are written to a temporary file that then replaces the old one, so a
+// crash while saving leaves the previous save, and they are read through memory mapping.
+// A save that is damaged or from another build is rejected before the world is changed.
+// A restored world continues exactly as the saved one would have, as long as it plays
+// the same chart.
+public class WorldSnapshot {
+    // File layout: magic, version, length of the world state, world state
+    private static final int MAGIC = 0x4D475353; // "MGSS"
+    private static final int VERSION = 4;
+    private static final int HEADER_BYTES = 12;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    // Write the world into the reusable buffer and return it, ready to be read
+    public ByteBuffer capture(World world) {
+        int needed = HEADER_BYTES + world.stateSize();
+        if (buffer.capacity() < needed) {
+            buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(needed) * 2);
+        }
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(0);
+        world.writeState(buffer);
+        buffer.putInt(8, buffer.position() - HEADER_BYTES);
+        buffer.flip();
+        return buffer;
+    }
+
+    // Put the world back to the state held in the given buffer
+    public void restore(World world, ByteBuffer source) throws IOException {
+        ByteBuffer in = source.duplicate();
+        if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC) {
+            throw new IOException("Not a saved game");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported saved game version " + version);
+        }
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Saved game is truncated");
+        }
+        in.limit(in.position() + length);
+        try {
+            world.readState(in);
+        } catch (RuntimeException e) {
+            throw new IOException("Saved game is damaged", e);
+        }
+    }
+
+    // Put the world back to the last captured state
+    public void restore(World world) throws IOException {
+        restore(world, buffer);
+    }
+
+    // Capture the world and write it to a file, replacing the old one only once it is complete
+    public void save(World world, Path file) throws IOException {
+        ByteBuffer state = capture(world).duplicate();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (state.hasRemaining()) {
+                channel.write(state);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Read a file written by save into the world
+    public void load(World world, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            restore(world, mapped);
+        }
+    }
+}